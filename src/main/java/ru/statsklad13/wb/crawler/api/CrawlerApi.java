@@ -3,7 +3,10 @@ package ru.statsklad13.wb.crawler.api;
 import lombok.Cleanup;
 import lombok.Getter;
 import lombok.val;
+import ru.statsklad13.wb.crawler.api.data.misc.BasketRoutes;
 import ru.statsklad13.wb.crawler.api.data.misc.PrioritizedTask;
+import ru.statsklad13.wb.crawler.api.data.misc.TypedProperties;
+import ru.statsklad13.wb.crawler.api.data.misc.UrlTemplate;
 import ru.statsklad13.wb.crawler.api.data.source.Catalog;
 import ru.statsklad13.wb.crawler.api.data.source.Category;
 import ru.statsklad13.wb.crawler.api.data.source.Source;
@@ -11,18 +14,41 @@ import ru.statsklad13.wb.crawler.api.data.source.Source;
 import java.io.IOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
-import java.util.StringJoiner;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class CrawlerApi {
 
+    public enum ExecutorMode {
+        PLATFORM, VIRTUAL
+    }
+
+    public enum EndpointClass {
+        SEARCH, CARD, STATIC
+    }
+
     public static class Constants {
 
         public static final String CATEGORIES_URL = "https://www.wildberries.ru/webapi/menu/main-menu-ru-ru.json";
@@ -36,6 +62,7 @@ public class CrawlerApi {
         public static final String PRODUCT_IMAGE_URL_T = "https://basket-%basket%.wb.ru/vol%vol%/part%part%/%sku%/images/big/1.jpg";
         public static final String BRAND_IMAGE_URL_T = "https://images.wbstatic.net/brands/small/%id%.jpg";
         public static final String SELLER_IMAGE_URL_T = "https://images.wbstatic.net/shops/%id%_logo.jpg";
+        public static final String DEFAULT_BASKET_ROUTES = "14400000,28800000,43200000,72000000,100800000,106200000,111600000,117000000,131400000,160200000";
         public static final String CATEGORY_START = "/catalog";
         public static final String CATEGORY_SEPARATOR = "/";
         public static final int PRODUCTS_PER_PAGE = 300;
@@ -43,20 +70,89 @@ public class CrawlerApi {
         public static final int POSITION_PLACE_CAP = 5000;
         public static final Path WAREHOUSE_RESPONSE_PATH = Paths.get("warehouses.json");
         public static final int DEFAULT_BATCH_SIZE = 0;
+        public static final int RESULT_CACHE_MAX_SIZE = 500000;
+        public static final int FINGERPRINT_CACHE_MAX_SIZE = 1000000;
+        public static final long FINGERPRINT_MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
         public static final PrioritizedTask.Level DEFAULT_PRIORITY = PrioritizedTask.Level.MEDIUM;
+        public static final int BASKET_PROBE_MARGIN = 2000000;
+
+    }
+
+    private static class Templates {
+
+        private static final UrlTemplate CATALOG_URL = UrlTemplate.compile(Constants.CATALOG_URL_T, "query");
+        private static final UrlTemplate CATEGORY_PAGE_URL = UrlTemplate.compile(Constants.CATEGORY_PAGE_URL_T, "shard", "query", "page");
+        private static final UrlTemplate QUERY_PAGE_URL = UrlTemplate.compile(Constants.QUERY_PAGE_URL_T, "shard", "query", "page");
+        private static final UrlTemplate CATEGORY_QUERIES_URL = UrlTemplate.compile(Constants.CATEGORY_QUERIES_URL_T, "url");
+        private static final UrlTemplate SIMILAR_QUERIES_URL = UrlTemplate.compile(Constants.SIMILAR_QUERIES_URL_T, "query");
+        private static final UrlTemplate SELLER_URL = UrlTemplate.compile(Constants.SELLER_URL_T, "basket", "vol", "part", "sku");
+        private static final UrlTemplate STOCKS_URL = UrlTemplate.compile(Constants.STOCKS_URL_T, "skus");
+        private static final UrlTemplate PRODUCT_IMAGE_URL = UrlTemplate.compile(Constants.PRODUCT_IMAGE_URL_T, "basket", "vol", "part", "sku");
+        private static final UrlTemplate BRAND_IMAGE_URL = UrlTemplate.compile(Constants.BRAND_IMAGE_URL_T, "id");
+        private static final UrlTemplate SELLER_IMAGE_URL = UrlTemplate.compile(Constants.SELLER_IMAGE_URL_T, "id");
+        private static final Map<String, UrlTemplate> ENDPOINTS = Map.of(
+                "catalog", CATALOG_URL,
+                "category_page", CATEGORY_PAGE_URL,
+                "query_page", QUERY_PAGE_URL,
+                "category_queries", CATEGORY_QUERIES_URL,
+                "similar_queries", SIMILAR_QUERIES_URL,
+                "seller", SELLER_URL,
+                "stocks", STOCKS_URL,
+                "product_image", PRODUCT_IMAGE_URL,
+                "brand_image", BRAND_IMAGE_URL,
+                "seller_image", SELLER_IMAGE_URL);
 
     }
 
     public static class Settings {
 
+        private static final Set<String> STARTUP_KEYS = Set.of("timezone", "database_url", "database_username",
+                "database_password", "database_prepare_threshold", "database_statement_cache_size", "executor_mode", "basket_routes", "web_http2", "web_max_idle_per_host",
+                "web_keep_alive_ms", "web_accept_encoding", "web_egresses");
+        private static final long RELOAD_SETTLE_MS = 500;
+
         @Getter private static String timezone;
         @Getter private static String databaseUrl;
         @Getter private static String databaseUsername;
-        @Getter private static int databaseThreads;
-        @Getter private static int webThreads;
-        @Getter private static int webMaxRetries;
-        @Getter private static long webRetryDelayMs;
+        @Getter private static volatile int databaseThreads;
+        @Getter private static volatile long databaseConnectionTimeoutMs;
+        @Getter private static volatile int databaseQueryBatchSize;
+        @Getter private static int databasePrepareThreshold;
+        @Getter private static int databaseStatementCacheSize;
+        @Getter private static volatile int webThreads;
+        @Getter private static volatile int webMaxRetries;
+        @Getter private static volatile long webRetryDelayMs;
+        @Getter private static boolean webHttp2Enabled;
+        @Getter private static int webMaxIdlePerHost;
+        @Getter private static long webKeepAliveMs;
+        @Getter private static String webAcceptEncoding;
+        @Getter private static volatile long webRetryMaxDelayMs;
+        @Getter private static volatile int webBreakerFailureRate;
+        @Getter private static volatile long webBreakerDelayMs;
+        @Getter private static volatile boolean webHedgingEnabled;
+        @Getter private static volatile double webHedgeBudget;
+        @Getter private static List<String> webEgresses;
+        @Getter private static volatile int webEgressMaxFailures;
+        @Getter private static volatile long webEgressEjectionMs;
+        @Getter private static volatile int stocksBatchSize;
+        @Getter private static volatile boolean discoveryIncremental;
+        @Getter private static volatile double discoveryRevalidateFraction;
+        @Getter private static volatile int discoveryMaxAgeDays;
+        @Getter private static volatile boolean archiveEnabled;
+        @Getter private static volatile int archiveHotDays;
+        @Getter private static volatile boolean minifyOnline;
+        @Getter private static volatile int iterationSlices;
+        @Getter private static volatile int iterationHotLimit;
+        @Getter private static volatile long iterationDeadlineMarginMs;
+        @Getter private static volatile boolean revisitEnabled;
+        @Getter private static volatile int revisitMaxHours;
+        @Getter private static ExecutorMode executorMode;
+        private static int[] basketBounds;
         private static String databasePassword;
+        private static Path settingsPath;
+        private static Properties loadedProps;
+        private static Properties rejectedProps;
+        private static final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
 
         public static String getDatabasePasswordOnce() {
             val password = databasePassword;
@@ -64,23 +160,242 @@ public class CrawlerApi {
             return password;
         }
 
-        public static void load(String settingsFile) throws IOException {
-            @Cleanup val stream = Files.newInputStream(Paths.get(settingsFile));
+        public static int[] getBasketBounds() {
+            return basketBounds.clone();
+        }
+
+        public static boolean isReloadable(String key) {
+            return !STARTUP_KEYS.contains(key);
+        }
+
+        public static void addReloadListener(Runnable listener) {
+            reloadListeners.add(listener);
+        }
+
+        public static synchronized void load(String settingsFile) throws IOException {
+            settingsPath = Paths.get(settingsFile);
+            val props = readProperties(settingsPath);
+            apply(new TypedProperties(props), true);
+            loadedProps = props;
+            TimeZone.setDefault(TimeZone.getTimeZone(timezone));
+        }
+
+        public static synchronized Set<String> reload() throws IOException {
+            val props = readProperties(settingsPath);
+            val changedKeys = new TreeSet<String>();
+            val keys = new HashSet<>(props.stringPropertyNames());
+            keys.addAll(loadedProps.stringPropertyNames());
+            for (val key : keys) {
+                if (!Objects.equals(props.getProperty(key), loadedProps.getProperty(key))) {
+                    changedKeys.add(key);
+                }
+            }
+            if (changedKeys.isEmpty() || props.equals(rejectedProps)) {
+                return Set.of();
+            }
+            try {
+                apply(new TypedProperties(props), false);
+            } catch (RuntimeException ex) {
+                apply(new TypedProperties(loadedProps), false);
+                rejectedProps = props;
+                throw ex;
+            }
+            loadedProps = props;
+            rejectedProps = null;
+            for (val listener : reloadListeners) {
+                listener.run();
+            }
+            return changedKeys;
+        }
+
+        public static void watch(Consumer<Set<String>> onReload, Consumer<Exception> onError) throws IOException {
+            val path = settingsPath.toAbsolutePath();
+            val watcher = path.getFileSystem().newWatchService();
+            path.getParent().register(watcher, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+            val thread = createFactory("WB CrawlerApi Settings Thread", false).newThread(() -> {
+                try {
+                    while (true) {
+                        val key = watcher.take();
+                        val changed = key.pollEvents().stream().anyMatch(event -> path.getFileName().equals(event.context()));
+                        key.reset();
+                        if (!changed) {
+                            continue;
+                        }
+                        Thread.sleep(RELOAD_SETTLE_MS);
+                        try {
+                            val changedKeys = reload();
+                            if (!changedKeys.isEmpty()) {
+                                onReload.accept(changedKeys);
+                            }
+                        } catch (Exception ex) {
+                            onError.accept(ex);
+                        }
+                    }
+                } catch (InterruptedException | ClosedWatchServiceException ignored) {
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private static Properties readProperties(Path path) throws IOException {
+            @Cleanup val stream = Files.newInputStream(path);
             val props = new Properties();
             props.load(stream);
-            timezone = props.getProperty("timezone");
-            databaseUrl = props.getProperty("database_url");
-            databaseUsername = props.getProperty("database_username");
-            databasePassword = props.getProperty("database_password");
-            databaseThreads = Integer.parseInt(props.getProperty("database_threads"));
-            webThreads = Integer.parseInt(props.getProperty("web_threads"));
-            webMaxRetries = Integer.parseInt(props.getProperty("web_max_retries"));
-            webRetryDelayMs = Long.parseLong(props.getProperty("web_retry_delay_ms"));
-            TimeZone.setDefault(TimeZone.getTimeZone(timezone));
+            return props;
+        }
+
+        private static void apply(TypedProperties props, boolean initial) {
+            val threads = props.getInt("database_threads", 8, 1, 1024);
+            val connectionTimeoutMs = props.getLong("database_connection_timeout_ms", 30000, 250, Integer.MAX_VALUE);
+            val queryBatchSize = props.getInt("database_query_batch_size", 1000000, 1, Integer.MAX_VALUE);
+            val webThreadCount = props.getInt("web_threads", 64, 1, 4096);
+            val maxRetries = props.getInt("web_max_retries", 10, 0, 100);
+            val retryDelayMs = props.getLong("web_retry_delay_ms", 1000, 1, Integer.MAX_VALUE);
+            val retryMaxDelayMs = props.getLong("web_retry_max_delay_ms", 60000, 1, Integer.MAX_VALUE);
+            val breakerFailureRate = props.getInt("web_breaker_failure_rate", 50, 1, 100);
+            val breakerDelayMs = props.getLong("web_breaker_delay_ms", 30000, 0, Integer.MAX_VALUE);
+            val hedgingEnabled = props.getBoolean("web_hedging_enabled", false);
+            val hedgeBudget = props.getDouble("web_hedge_budget", 0.05, 0, 1);
+            val egressMaxFailures = props.getInt("web_egress_max_failures", 5, 1, Integer.MAX_VALUE);
+            val egressEjectionMs = props.getLong("web_egress_ejection_ms", 60000, 0, Integer.MAX_VALUE);
+            val stocksBatch = props.getInt("stocks_batch_size", Constants.PRODUCTS_PER_PAGE, 1, 1000);
+            val incremental = props.getBoolean("discovery_incremental", false);
+            val revalidateFraction = props.getDouble("discovery_revalidate_fraction", 0.2, 0, 1);
+            val maxAgeDays = props.getInt("discovery_max_age_days", 7, 0, Integer.MAX_VALUE);
+            val archive = props.getBoolean("archive_enabled", false);
+            val hotDays = props.getInt("archive_hot_days", 3, 3, Integer.MAX_VALUE);
+            val minify = props.getBoolean("minify_online", true);
+            val slices = props.getInt("iteration_slices", 16, 1, 1024);
+            val hotLimit = props.getInt("iteration_hot_limit", 100000, 0, Integer.MAX_VALUE);
+            val deadlineMarginMs = props.getLong("iteration_deadline_margin_ms", 1800000, 0, Long.MAX_VALUE);
+            val revisit = props.getBoolean("revisit_enabled", false);
+            val maxHours = props.getInt("revisit_max_hours", 24, 3, 24);
+            if (initial) {
+                val zone = props.getString("timezone", "UTC");
+                val url = props.getRequiredString("database_url");
+                val username = props.getRequiredString("database_username");
+                val password = props.getRequiredString("database_password");
+                val prepareThreshold = props.getInt("database_prepare_threshold", 5, -1, Integer.MAX_VALUE);
+                val statementCacheSize = props.getInt("database_statement_cache_size", 256, 0, Integer.MAX_VALUE);
+                val http2 = props.getBoolean("web_http2", false);
+                val maxIdlePerHost = props.getInt("web_max_idle_per_host", 16, 0, Integer.MAX_VALUE);
+                val keepAliveMs = props.getLong("web_keep_alive_ms", 60000, 1, Long.MAX_VALUE);
+                val acceptEncoding = props.getString("web_accept_encoding", "gzip");
+                val egresses = props.getList("web_egresses", "direct");
+                val mode = props.getEnum("executor_mode", ExecutorMode.PLATFORM);
+                int[] bounds;
+                try {
+                    bounds = BasketRoutes.parseBounds(props.getString("basket_routes", Constants.DEFAULT_BASKET_ROUTES));
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("Invalid setting basket_routes, expected comma separated integers", ex);
+                }
+                timezone = zone;
+                databaseUrl = url;
+                databaseUsername = username;
+                databasePassword = password;
+                databasePrepareThreshold = prepareThreshold;
+                databaseStatementCacheSize = statementCacheSize;
+                webHttp2Enabled = http2;
+                webMaxIdlePerHost = maxIdlePerHost;
+                webKeepAliveMs = keepAliveMs;
+                webAcceptEncoding = acceptEncoding;
+                webEgresses = egresses;
+                executorMode = mode;
+                basketBounds = bounds;
+            }
+            databaseThreads = threads;
+            databaseConnectionTimeoutMs = connectionTimeoutMs;
+            databaseQueryBatchSize = queryBatchSize;
+            webThreads = webThreadCount;
+            webMaxRetries = maxRetries;
+            webRetryDelayMs = retryDelayMs;
+            webRetryMaxDelayMs = retryMaxDelayMs;
+            webBreakerFailureRate = breakerFailureRate;
+            webBreakerDelayMs = breakerDelayMs;
+            webHedgingEnabled = hedgingEnabled;
+            webHedgeBudget = hedgeBudget;
+            webEgressMaxFailures = egressMaxFailures;
+            webEgressEjectionMs = egressEjectionMs;
+            stocksBatchSize = stocksBatch;
+            discoveryIncremental = incremental;
+            discoveryRevalidateFraction = revalidateFraction;
+            discoveryMaxAgeDays = maxAgeDays;
+            archiveEnabled = archive;
+            archiveHotDays = hotDays;
+            minifyOnline = minify;
+            iterationSlices = slices;
+            iterationHotLimit = hotLimit;
+            iterationDeadlineMarginMs = deadlineMarginMs;
+            revisitEnabled = revisit;
+            revisitMaxHours = maxHours;
         }
 
     }
 
+    private static Executor orchestrationExecutor;
+    private static BasketRoutes basketRoutes;
+
+    public static boolean isVirtualThreadsEnabled() {
+        return Settings.executorMode == ExecutorMode.VIRTUAL && createVirtualFactory("WB CrawlerApi Probe Thread") != null;
+    }
+
+    public static synchronized Executor getOrchestrationExecutor() {
+        if (orchestrationExecutor == null) {
+            orchestrationExecutor = isVirtualThreadsEnabled() ?
+                    createTaskExecutor("WB CrawlerApi Orchestration Thread") :
+                    ForkJoinPool.commonPool();
+        }
+        return orchestrationExecutor;
+    }
+
+    public static synchronized BasketRoutes getBasketRoutes() {
+        if (basketRoutes == null) {
+            basketRoutes = new BasketRoutes(Settings.basketBounds);
+        }
+        return basketRoutes;
+    }
+
+    public static synchronized void restoreBasketRoutes(int[] upperBounds) {
+        basketRoutes = new BasketRoutes(upperBounds);
+    }
+
+    public static ExecutorService createTaskExecutor(String name) {
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                createTaskFactory(name, true));
+    }
+
+    public static void resizeExecutor(ThreadPoolExecutor executor, int threads) {
+        if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+    }
+
+    public static ThreadFactory createTaskFactory(String name, boolean numbered) {
+        if (Settings.executorMode == ExecutorMode.VIRTUAL) {
+            val factory = createVirtualFactory(name);
+            if (factory != null) {
+                return factory;
+            }
+        }
+        return createFactory(name, numbered);
+    }
+
+    private static ThreadFactory createVirtualFactory(String name) {
+        try {
+            val builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            val builderClass = Class.forName("java.lang.Thread$Builder");
+            val named = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + " ", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(named);
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+
     public static ThreadFactory createFactory(String name, boolean numbered) {
         return new ThreadFactory() {
             private final AtomicInteger counter = new AtomicInteger();
@@ -94,87 +409,80 @@ public class CrawlerApi {
         };
     }
 
+    public static String resolveEndpointName(String url) {
+        if (url.equals(Constants.CATEGORIES_URL)) {
+            return "categories";
+        }
+        for (val entry : Templates.ENDPOINTS.entrySet()) {
+            if (entry.getValue().matches(url)) {
+                return entry.getKey();
+            }
+        }
+        return "other";
+    }
+
+    public static EndpointClass classifyEndpoint(String endpointName) {
+        return switch (endpointName) {
+            case "stocks" -> EndpointClass.CARD;
+            case "seller", "product_image", "brand_image", "seller_image" -> EndpointClass.STATIC;
+            default -> EndpointClass.SEARCH;
+        };
+    }
+
     public static String createCatalogUrl(Source source) {
-        return Constants.CATALOG_URL_T.replace("%query%", URLEncoder.encode(source.getKey().getText(), StandardCharsets.UTF_8));
+        return Templates.CATALOG_URL.render(URLEncoder.encode(source.getKey().getText(), StandardCharsets.UTF_8));
     }
 
     public static String createCatalogPageUrl(Catalog catalog, int page) {
         val s = catalog.getKey().getShard();
         return (s.startsWith("presets/") || s.startsWith("brands/") || s.startsWith("merger") ?
-                Constants.QUERY_PAGE_URL_T :
-                Constants.CATEGORY_PAGE_URL_T).replace("%shard%", s)
-                .replace("%query%", catalog.getKey().getQuery())
-                .replace("%page%", String.valueOf(page));
+                Templates.QUERY_PAGE_URL :
+                Templates.CATEGORY_PAGE_URL).render(s, catalog.getKey().getQuery(), page);
     }
 
     public static String createQueriesUrl(Source source) {
         return source instanceof Category ?
-                Constants.CATEGORY_QUERIES_URL_T.replace("%url%", ((Category) source).getUrl()) :
-                Constants.SIMILAR_QUERIES_URL_T.replace("%query%", URLEncoder.encode(source.getKey().getText(), StandardCharsets.UTF_8));
+                Templates.CATEGORY_QUERIES_URL.render(((Category) source).getUrl()) :
+                Templates.SIMILAR_QUERIES_URL.render(URLEncoder.encode(source.getKey().getText(), StandardCharsets.UTF_8));
     }
 
     public static String createSellerUrl(int sku) {
-        return Constants.SELLER_URL_T.replace("%basket%", extractBasketFromSku(sku))
-                .replace("%vol%", extractVolFromSku(sku))
-                .replace("%part%", extractPartFromSku(sku))
-                .replace("%sku%", String.valueOf(sku));
+        return createSellerUrl(sku, getBasketRoutes().basketOf(sku));
+    }
+
+    public static String createSellerUrl(int sku, int basket) {
+        return Templates.SELLER_URL.render(BasketRoutes.formatBasket(basket), extractVolFromSku(sku), extractPartFromSku(sku), sku);
     }
 
     public static String createStocksUrl(Collection<Integer> skus) {
-        val sj = new StringJoiner(";");
+        val sb = new StringBuilder(skus.size() * 10);
         for (val sku : skus) {
-            sj.add(String.valueOf(sku));
+            if (sb.length() > 0) {
+                sb.append(';');
+            }
+            sb.append((int) sku);
         }
-        return Constants.STOCKS_URL_T.replace("%skus%", sj.toString());
+        return Templates.STOCKS_URL.render(sb);
     }
 
     public static String createProductImageUrl(int sku) {
-        return Constants.PRODUCT_IMAGE_URL_T.replace("%basket%", extractBasketFromSku(sku))
-                .replace("%vol%", extractVolFromSku(sku))
-                .replace("%part%", extractPartFromSku(sku))
-                .replace("%sku%", String.valueOf(sku));
+        return Templates.PRODUCT_IMAGE_URL.render(BasketRoutes.formatBasket(getBasketRoutes().basketOf(sku)), extractVolFromSku(sku), extractPartFromSku(sku), sku);
     }
 
     public static String createBrandImageUrl(int brandId) {
-        return Constants.BRAND_IMAGE_URL_T.replace("%id%", String.valueOf(brandId));
+        return Templates.BRAND_IMAGE_URL.render(brandId);
     }
 
     public static String createSellerImageUrl(int sellerId) {
-        return Constants.SELLER_IMAGE_URL_T.replace("%id%", String.valueOf(sellerId));
-    }
-
-    private static String extractBasketFromSku(int sku) {
-        if (sku < 14400000) {
-            return "01";
-        } else if (sku < 28800000) {
-            return "02";
-        } else if (sku < 43200000) {
-            return "03";
-        } else if (sku < 72000000) {
-            return "04";
-        } else if (sku < 100800000) {
-            return "05";
-        } else if (sku < 106200000) {
-            return "06";
-        } else if (sku < 111600000) {
-            return "07";
-        } else if (sku < 117000000) {
-            return "08";
-        } else if (sku < 131400000) {
-            return "09";
-        } else if (sku < 160200000) {
-            return "10";
-        } else {
-            return "11";
-        }
+        return Templates.SELLER_IMAGE_URL.render(sellerId);
     }
 
-    private static String extractVolFromSku(int sku) {
-        return String.valueOf(sku / 100000);
+    private static int extractVolFromSku(int sku) {
+        return sku / 100000;
     }
 
-    private static String extractPartFromSku(int sku) {
-        return String.valueOf(sku / 1000);
+    private static int extractPartFromSku(int sku) {
+        return sku / 1000;
     }
 
 }
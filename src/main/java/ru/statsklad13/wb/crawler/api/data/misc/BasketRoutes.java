@@ -0,0 +1,142 @@
+package ru.statsklad13.wb.crawler.api.data.misc;
+
+import lombok.val;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class BasketRoutes {
+
+    public static final int MAX_BASKETS = 99;
+
+    private volatile int[] upperBounds;
+    private final AtomicLongArray requests = new AtomicLongArray(MAX_BASKETS + 1);
+    private final AtomicLongArray misses = new AtomicLongArray(MAX_BASKETS + 1);
+    private final LongAdder learnedBounds = new LongAdder();
+
+    public BasketRoutes(int[] upperBounds) {
+        val bounds = upperBounds.clone();
+        for (var i = 1; i < bounds.length; i++) {
+            if (bounds[i] <= bounds[i - 1]) {
+                throw new IllegalArgumentException("Basket bounds must be strictly ascending: " + Arrays.toString(upperBounds));
+            }
+        }
+        if (bounds.length >= MAX_BASKETS) {
+            throw new IllegalArgumentException("Too many basket bounds: " + bounds.length);
+        }
+        this.upperBounds = bounds;
+    }
+
+    public static int[] parseBounds(String str) {
+        return Arrays.stream(str.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .mapToInt(Integer::parseInt)
+                .toArray();
+    }
+
+    public static String formatBasket(int basket) {
+        return basket < 10 ? "0" + basket : Integer.toString(basket);
+    }
+
+    public int basketOf(int sku) {
+        val index = Arrays.binarySearch(this.upperBounds, sku);
+        return (index >= 0 ? index + 1 : -index - 1) + 1;
+    }
+
+    public int getBasketCount() {
+        return this.upperBounds.length + 1;
+    }
+
+    public int[] getUpperBounds() {
+        return this.upperBounds.clone();
+    }
+
+    public boolean isNearBoundary(int sku, int basket, int margin) {
+        val bounds = this.upperBounds;
+        if (basket > bounds.length) {
+            return true;
+        }
+        val lower = basket >= 2 ? bounds[basket - 2] : Integer.MIN_VALUE;
+        return (long) sku - lower < margin || (long) bounds[basket - 1] - sku <= margin;
+    }
+
+    public int[] neighboursOf(int basket) {
+        val upper = basket + 1 <= Math.min(getBasketCount() + 1, MAX_BASKETS) ? basket + 1 : 0;
+        val lower = basket - 1 >= 1 ? basket - 1 : 0;
+        return Arrays.stream(new int[]{upper, lower}).filter(b -> b > 0).toArray();
+    }
+
+    public synchronized boolean learn(int sku, int basket) {
+        val predicted = basketOf(sku);
+        if (Math.abs(basket - predicted) != 1) {
+            return false;
+        }
+        val bounds = this.upperBounds;
+        int[] updated;
+        if (basket > predicted) {
+            val index = predicted - 1;
+            val lower = index >= 1 ? bounds[index - 1] : Integer.MIN_VALUE;
+            if (sku <= lower) {
+                return false;
+            }
+            if (index == bounds.length) {
+                if (bounds.length + 1 >= MAX_BASKETS) {
+                    return false;
+                }
+                updated = Arrays.copyOf(bounds, bounds.length + 1);
+            } else {
+                updated = bounds.clone();
+            }
+            updated[index] = sku;
+        } else {
+            val index = basket - 1;
+            if (index + 1 < bounds.length && sku + 1 >= bounds[index + 1]) {
+                return false;
+            }
+            updated = bounds.clone();
+            updated[index] = sku + 1;
+        }
+        this.upperBounds = updated;
+        this.learnedBounds.increment();
+        return true;
+    }
+
+    public void recordRequest(int basket, boolean found) {
+        val slot = Math.min(basket, MAX_BASKETS);
+        this.requests.incrementAndGet(slot);
+        if (!found) {
+            this.misses.incrementAndGet(slot);
+        }
+    }
+
+    public long getLearnedBounds() {
+        return this.learnedBounds.sum();
+    }
+
+    public Map<String, Long> getRequestCounts() {
+        val counts = new LinkedHashMap<String, Long>();
+        for (var basket = 1; basket <= MAX_BASKETS; basket++) {
+            val count = this.requests.get(basket);
+            if (count > 0) {
+                counts.put(formatBasket(basket), count);
+            }
+        }
+        return counts;
+    }
+
+    public Map<String, Long> getMissCounts() {
+        val counts = new LinkedHashMap<String, Long>();
+        for (var basket = 1; basket <= MAX_BASKETS; basket++) {
+            val count = this.misses.get(basket);
+            if (count > 0) {
+                counts.put(formatBasket(basket), count);
+            }
+        }
+        return counts;
+    }
+
+}
@@ -0,0 +1,110 @@
+package ru.statsklad13.wb.crawler.api.data.misc;
+
+import lombok.Getter;
+import lombok.val;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Egress {
+
+    @Getter private final String id;
+    @Getter private final Proxy proxy;
+    @Getter private final InetAddress localAddress;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder throttles = new LongAdder();
+    private final LongAdder ejections = new LongAdder();
+    private int consecutiveFailures;
+    private int consecutiveEjections;
+    private volatile long ejectedUntilMs;
+
+    private Egress(String id, Proxy proxy, InetAddress localAddress) {
+        this.id = id;
+        this.proxy = proxy;
+        this.localAddress = localAddress;
+    }
+
+    public static Egress parse(String spec) throws UnknownHostException {
+        val trimmed = spec.trim();
+        if (trimmed.equalsIgnoreCase("direct")) {
+            return new Egress(trimmed, Proxy.NO_PROXY, null);
+        }
+        if (trimmed.startsWith("bind:")) {
+            return new Egress(trimmed, Proxy.NO_PROXY, InetAddress.getByName(trimmed.substring("bind:".length())));
+        }
+        val uri = URI.create(trimmed);
+        if (uri.getHost() == null || uri.getPort() < 0) {
+            throw new IllegalArgumentException("Malformed egress " + spec);
+        }
+        val type = switch (uri.getScheme().toLowerCase()) {
+            case "http" -> Proxy.Type.HTTP;
+            case "socks", "socks5" -> Proxy.Type.SOCKS;
+            default -> throw new IllegalArgumentException("Unsupported egress scheme in " + spec);
+        };
+        return new Egress(trimmed, new Proxy(type, InetSocketAddress.createUnresolved(uri.getHost(), uri.getPort())), null);
+    }
+
+    public boolean isAvailable(long nowMs) {
+        return this.ejectedUntilMs <= nowMs;
+    }
+
+    public long getEjectedUntilMs() {
+        return this.ejectedUntilMs;
+    }
+
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    public void begin() {
+        this.inFlight.incrementAndGet();
+        this.requests.increment();
+    }
+
+    public synchronized void end(boolean succeeded, boolean throttled, int maxFailures, long ejectionMs) {
+        this.inFlight.decrementAndGet();
+        if (throttled) {
+            this.throttles.increment();
+            eject(ejectionMs);
+        } else if (!succeeded) {
+            this.failures.increment();
+            if (++this.consecutiveFailures >= maxFailures) {
+                eject(ejectionMs);
+            }
+        } else {
+            this.consecutiveFailures = 0;
+            this.consecutiveEjections = 0;
+        }
+    }
+
+    private void eject(long ejectionMs) {
+        this.consecutiveFailures = 0;
+        this.consecutiveEjections = Math.min(this.consecutiveEjections + 1, 6);
+        this.ejectedUntilMs = System.currentTimeMillis() + (ejectionMs << (this.consecutiveEjections - 1));
+        this.ejections.increment();
+    }
+
+    public long getRequests() {
+        return this.requests.sum();
+    }
+
+    public long getFailures() {
+        return this.failures.sum();
+    }
+
+    public long getThrottles() {
+        return this.throttles.sum();
+    }
+
+    public long getEjections() {
+        return this.ejections.sum();
+    }
+
+}
@@ -0,0 +1,49 @@
+package ru.statsklad13.wb.crawler.api.data.misc;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class EndpointTransferStats {
+
+    private final LongAdder responses = new LongAdder();
+    private final LongAdder compressedResponses = new LongAdder();
+    private final LongAdder wireBytes = new LongAdder();
+    private final LongAdder decodedBytes = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+
+    public void recordResponse(boolean compressed) {
+        this.responses.increment();
+        if (compressed) {
+            this.compressedResponses.increment();
+        }
+    }
+
+    public void recordWireBytes(long bytes) {
+        this.wireBytes.add(bytes);
+    }
+
+    public void recordDecodedBytes(long bytes, long nanos) {
+        this.decodedBytes.add(bytes);
+        this.decodeNanos.add(nanos);
+    }
+
+    public long getResponses() {
+        return this.responses.sum();
+    }
+
+    public long getCompressedResponses() {
+        return this.compressedResponses.sum();
+    }
+
+    public long getWireBytes() {
+        return this.wireBytes.sum();
+    }
+
+    public long getDecodedBytes() {
+        return this.decodedBytes.sum();
+    }
+
+    public long getDecodeNanos() {
+        return this.decodeNanos.sum();
+    }
+
+}
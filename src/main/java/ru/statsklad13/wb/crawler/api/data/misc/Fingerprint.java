@@ -0,0 +1,12 @@
+package ru.statsklad13.wb.crawler.api.data.misc;
+
+import lombok.Value;
+
+@Value
+public class Fingerprint {
+
+    String etag;
+    long contentHash;
+    long createdMs;
+
+}
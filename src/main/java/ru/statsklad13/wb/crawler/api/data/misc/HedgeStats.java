@@ -0,0 +1,30 @@
+package ru.statsklad13.wb.crawler.api.data.misc;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class HedgeStats {
+
+    @Getter private final LatencyHistogram attemptLatency = new LatencyHistogram();
+    @Getter private final LatencyHistogram observedLatency = new LatencyHistogram();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    public void recordHedge() {
+        this.hedges.increment();
+    }
+
+    public void recordHedgeWin() {
+        this.hedgeWins.increment();
+    }
+
+    public long getHedges() {
+        return this.hedges.sum();
+    }
+
+    public long getHedgeWins() {
+        return this.hedgeWins.sum();
+    }
+
+}
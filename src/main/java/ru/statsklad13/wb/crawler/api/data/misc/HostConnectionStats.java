@@ -0,0 +1,67 @@
+package ru.statsklad13.wb.crawler.api.data.misc;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class HostConnectionStats {
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder reusedConnections = new LongAdder();
+    private final LongAdder handshakes = new LongAdder();
+    private final LongAdder handshakeNanos = new LongAdder();
+    private final LongAdder http2Responses = new LongAdder();
+    private volatile boolean http1Fallback;
+
+    public void recordRequest(boolean reused) {
+        this.requests.increment();
+        if (reused) {
+            this.reusedConnections.increment();
+        }
+    }
+
+    public void recordConnection() {
+        this.connections.increment();
+    }
+
+    public void recordHandshake(long nanos) {
+        this.handshakes.increment();
+        this.handshakeNanos.add(nanos);
+    }
+
+    public void recordHttp2Response() {
+        this.http2Responses.increment();
+    }
+
+    public void markHttp1Fallback() {
+        this.http1Fallback = true;
+    }
+
+    public long getRequests() {
+        return this.requests.sum();
+    }
+
+    public long getConnections() {
+        return this.connections.sum();
+    }
+
+    public long getReusedConnections() {
+        return this.reusedConnections.sum();
+    }
+
+    public long getHandshakes() {
+        return this.handshakes.sum();
+    }
+
+    public long getHandshakeNanos() {
+        return this.handshakeNanos.sum();
+    }
+
+    public long getHttp2Responses() {
+        return this.http2Responses.sum();
+    }
+
+    public boolean isHttp1Fallback() {
+        return this.http1Fallback;
+    }
+
+}
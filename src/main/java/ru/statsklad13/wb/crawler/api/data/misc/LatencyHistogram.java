@@ -0,0 +1,49 @@
+package ru.statsklad13.wb.crawler.api.data.misc;
+
+import lombok.val;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram {
+
+    private static final int BUCKETS_PER_DOUBLING = 8;
+    private static final int BUCKET_COUNT = BUCKETS_PER_DOUBLING * 24;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+
+    public void record(long latencyMs) {
+        val index = (int) Math.min(BUCKET_COUNT - 1, Math.round(BUCKETS_PER_DOUBLING * Math.log(Math.max(0, latencyMs) + 1) / Math.log(2)));
+        this.buckets.incrementAndGet(index);
+        this.count.increment();
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    public long quantile(double q) {
+        var total = 0L;
+        for (var i = 0; i < BUCKET_COUNT; i++) {
+            total += this.buckets.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        val rank = (long) Math.ceil(q * total);
+        var seen = 0L;
+        for (var i = 0; i < BUCKET_COUNT; i++) {
+            seen += this.buckets.get(i);
+            if (seen >= rank) {
+                return upperBoundMs(i);
+            }
+        }
+        return upperBoundMs(BUCKET_COUNT - 1);
+    }
+
+    private static long upperBoundMs(int index) {
+        return Math.round(Math.pow(2, (index + 0.5) / BUCKETS_PER_DOUBLING)) - 1;
+    }
+
+}
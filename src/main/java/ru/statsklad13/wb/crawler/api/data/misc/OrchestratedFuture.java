@@ -0,0 +1,34 @@
+package ru.statsklad13.wb.crawler.api.data.misc;
+
+import lombok.val;
+import ru.statsklad13.wb.crawler.api.CrawlerApi;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+public class OrchestratedFuture<T> extends CompletableFuture<T> {
+
+    public static OrchestratedFuture<Void> runAsync(Runnable task, Executor executor) {
+        val future = new OrchestratedFuture<Void>();
+        executor.execute(() -> {
+            try {
+                task.run();
+                future.complete(null);
+            } catch (Throwable ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public Executor defaultExecutor() {
+        return CrawlerApi.getOrchestrationExecutor();
+    }
+
+    @Override
+    public <U> CompletableFuture<U> newIncompleteFuture() {
+        return new OrchestratedFuture<>();
+    }
+
+}
@@ -0,0 +1,21 @@
+package ru.statsklad13.wb.crawler.api.data.misc;
+
+import lombok.Value;
+import ru.statsklad13.wb.crawler.api.data.key.product.SellerKey;
+
+@Value
+public class SellerFingerprint {
+
+    Fingerprint fingerprint;
+    SellerKey sellerKey;
+
+    public static SellerFingerprint decode(Object[] encoded) {
+        return new SellerFingerprint(new Fingerprint((String) encoded[0], (Long) encoded[1], (Long) encoded[2]),
+                new SellerKey((Integer) encoded[3]));
+    }
+
+    public Object[] encode() {
+        return new Object[]{this.fingerprint.getEtag(), this.fingerprint.getContentHash(), this.fingerprint.getCreatedMs(), this.sellerKey.getWbId()};
+    }
+
+}
@@ -0,0 +1,105 @@
+package ru.statsklad13.wb.crawler.api.data.misc;
+
+import lombok.val;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+public class TypedProperties {
+
+    private final Properties props;
+
+    public TypedProperties(Properties props) {
+        this.props = props;
+    }
+
+    public String getString(String key, String defaultValue) {
+        val value = this.props.getProperty(key);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    public String getRequiredString(String key) {
+        val value = getString(key, null);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing required setting " + key);
+        }
+        return value;
+    }
+
+    public int getInt(String key, int defaultValue, int min, int max) {
+        return (int) getLong(key, defaultValue, min, max);
+    }
+
+    public long getLong(String key, long defaultValue, long min, long max) {
+        val value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        long parsed;
+        try {
+            parsed = Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            throw invalid(key, value, "an integer");
+        }
+        if (parsed < min || parsed > max) {
+            throw invalid(key, value, "a value in " + min + ".." + max);
+        }
+        return parsed;
+    }
+
+    public double getDouble(String key, double defaultValue, double min, double max) {
+        val value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        double parsed;
+        try {
+            parsed = Double.parseDouble(value);
+        } catch (NumberFormatException ex) {
+            throw invalid(key, value, "a number");
+        }
+        if (!(parsed >= min && parsed <= max)) {
+            throw invalid(key, value, "a value in " + min + ".." + max);
+        }
+        return parsed;
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        val value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value.equalsIgnoreCase("true")) {
+            return true;
+        }
+        if (value.equalsIgnoreCase("false")) {
+            return false;
+        }
+        throw invalid(key, value, "true or false");
+    }
+
+    public <E extends Enum<E>> E getEnum(String key, E defaultValue) {
+        val value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(defaultValue.getDeclaringClass(), value.toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw invalid(key, value, "one of " + Arrays.toString(defaultValue.getDeclaringClass().getEnumConstants()).toLowerCase());
+        }
+    }
+
+    public List<String> getList(String key, String defaultValue) {
+        return Arrays.stream(getString(key, defaultValue).split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .toList();
+    }
+
+    private static IllegalArgumentException invalid(String key, String value, String expected) {
+        return new IllegalArgumentException("Invalid setting " + key + "=" + value + ", expected " + expected);
+    }
+
+}
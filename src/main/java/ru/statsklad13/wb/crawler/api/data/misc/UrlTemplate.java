@@ -0,0 +1,90 @@
+package ru.statsklad13.wb.crawler.api.data.misc;
+
+import lombok.val;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class UrlTemplate {
+
+    private static final char SLOT_MARK = '%';
+    private static final ThreadLocal<StringBuilder> buffer = ThreadLocal.withInitial(() -> new StringBuilder(512));
+
+    private final String[] literals;
+    private final int[] slots;
+    private final List<String> slotNames;
+
+    private UrlTemplate(String[] literals, int[] slots, List<String> slotNames) {
+        this.literals = literals;
+        this.slots = slots;
+        this.slotNames = slotNames;
+    }
+
+    public static UrlTemplate compile(String template, String... slotNames) {
+        val names = List.of(slotNames);
+        val literals = new ArrayList<String>();
+        val slots = new ArrayList<Integer>();
+        var literalStart = 0;
+        var pos = 0;
+        while (pos < template.length()) {
+            val start = template.indexOf(SLOT_MARK, pos);
+            if (start < 0) {
+                break;
+            }
+            val end = template.indexOf(SLOT_MARK, start + 1);
+            if (end < 0) {
+                break;
+            }
+            val slot = names.indexOf(template.substring(start + 1, end));
+            if (slot < 0) {
+                pos = start + 1;
+                continue;
+            }
+            literals.add(template.substring(literalStart, start));
+            slots.add(slot);
+            literalStart = end + 1;
+            pos = end + 1;
+        }
+        literals.add(template.substring(literalStart));
+        return new UrlTemplate(literals.toArray(new String[0]), slots.stream().mapToInt(Integer::intValue).toArray(), names);
+    }
+
+    public String render(Object... values) {
+        if (values.length != this.slotNames.size()) {
+            throw new IllegalArgumentException("Expected values for " + this.slotNames + " but got " + values.length);
+        }
+        val sb = buffer.get();
+        sb.setLength(0);
+        for (var i = 0; i < this.slots.length; i++) {
+            sb.append(this.literals[i]);
+            val value = values[this.slots[i]];
+            if (value instanceof Integer) {
+                sb.append((int) value);
+            } else {
+                sb.append(value);
+            }
+        }
+        sb.append(this.literals[this.slots.length]);
+        return sb.toString();
+    }
+
+    public boolean matches(String url) {
+        if (!url.startsWith(this.literals[0])) {
+            return false;
+        }
+        var pos = this.literals[0].length();
+        for (var i = 1; i < this.literals.length - 1; i++) {
+            val found = url.indexOf(this.literals[i], pos);
+            if (found < 0) {
+                return false;
+            }
+            pos = found + this.literals[i].length();
+        }
+        if (this.literals.length == 1) {
+            return pos == url.length();
+        }
+        val last = this.literals[this.literals.length - 1];
+        return url.length() - last.length() >= pos && url.endsWith(last);
+    }
+
+}
@@ -5,7 +5,9 @@ import lombok.Value;
 @Value
 public class WebResponse {
 
-    String body;
+    byte[] body;
     int code;
+    Fingerprint fingerprint;
+    boolean unchanged;
 
 }
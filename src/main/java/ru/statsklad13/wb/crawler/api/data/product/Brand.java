@@ -2,6 +2,7 @@ package ru.statsklad13.wb.crawler.api.data.product;
 
 import lombok.EqualsAndHashCode;
 import lombok.Value;
+import ru.statsklad13.wb.crawler.api.CrawlerApi;
 import ru.statsklad13.wb.crawler.api.data.key.product.BrandKey;
 
 @Value
@@ -9,6 +10,9 @@ public class Brand {
 
     BrandKey key;
     @EqualsAndHashCode.Exclude String name;
-    @EqualsAndHashCode.Exclude String imageUrl;
+
+    public String getImageUrl() {
+        return CrawlerApi.createBrandImageUrl(this.key.getWbId());
+    }
 
 }
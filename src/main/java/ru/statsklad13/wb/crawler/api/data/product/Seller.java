@@ -2,6 +2,7 @@ package ru.statsklad13.wb.crawler.api.data.product;
 
 import lombok.EqualsAndHashCode;
 import lombok.Value;
+import ru.statsklad13.wb.crawler.api.CrawlerApi;
 import ru.statsklad13.wb.crawler.api.data.key.product.SellerKey;
 
 @Value
@@ -9,10 +10,13 @@ public class Seller {
 
     SellerKey key;
     @EqualsAndHashCode.Exclude String name;
-    @EqualsAndHashCode.Exclude String imageUrl;
     @EqualsAndHashCode.Exclude String inn;
     @EqualsAndHashCode.Exclude String ogrn;
     @EqualsAndHashCode.Exclude String ogrnip;
     @EqualsAndHashCode.Exclude String address;
 
+    public String getImageUrl() {
+        return CrawlerApi.createSellerImageUrl(this.key.getWbId());
+    }
+
 }
@@ -10,6 +10,6 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class Catalog {
 
     CatalogKey key;
-    @EqualsAndHashCode.Exclude AtomicInteger emptyPage = new AtomicInteger(Integer.MAX_VALUE);
+    @EqualsAndHashCode.Exclude AtomicInteger lastPage = new AtomicInteger(Integer.MAX_VALUE);
 
 }
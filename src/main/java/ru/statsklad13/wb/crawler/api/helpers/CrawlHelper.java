@@ -1,6 +1,7 @@
 package ru.statsklad13.wb.crawler.api.helpers;
 
 import com.github.cliftonlabs.json_simple.JsonArray;
+import com.github.cliftonlabs.json_simple.JsonException;
 import com.github.cliftonlabs.json_simple.JsonObject;
 import com.github.cliftonlabs.json_simple.Jsoner;
 import lombok.val;
@@ -14,7 +15,10 @@ import ru.statsklad13.wb.crawler.api.data.key.source.SourceKey;
 import ru.statsklad13.wb.crawler.api.data.merch.Size;
 import ru.statsklad13.wb.crawler.api.data.merch.Stock;
 import ru.statsklad13.wb.crawler.api.data.merch.Warehouse;
+import ru.statsklad13.wb.crawler.api.data.misc.Fingerprint;
 import ru.statsklad13.wb.crawler.api.data.misc.PrioritizedTask;
+import ru.statsklad13.wb.crawler.api.data.misc.SellerFingerprint;
+import ru.statsklad13.wb.crawler.api.data.misc.WebResponse;
 import ru.statsklad13.wb.crawler.api.data.product.*;
 import ru.statsklad13.wb.crawler.api.data.result.*;
 import ru.statsklad13.wb.crawler.api.data.source.Catalog;
@@ -22,34 +26,53 @@ import ru.statsklad13.wb.crawler.api.data.source.Category;
 import ru.statsklad13.wb.crawler.api.data.source.Query;
 import ru.statsklad13.wb.crawler.api.data.source.Source;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
 import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 public class CrawlHelper {
 
+    private static final ConcurrentHashMap<String, CompletableFuture<?>> resultCache = new ConcurrentHashMap<>();
+    private static final LongAdder resultCacheHits = new LongAdder();
+    private static final LongAdder resultCacheMisses = new LongAdder();
+    private static volatile String resultScope = "";
+    private static volatile Map<Integer, Object[]> sellerFingerprints = createFingerprintCache();
+    private static final LongAdder sellerRequests = new LongAdder();
+    private static final LongAdder fingerprintedRequests = new LongAdder();
+    private static final LongAdder unchangedPayloads = new LongAdder();
+
     public static CompletableFuture<CrawledCatalog> crawlCatalog(Source source) {
         return crawlCatalog(CrawlerApi.Constants.DEFAULT_PRIORITY, source);
     }
 
     public static CompletableFuture<CrawledCatalog> crawlCatalog(PrioritizedTask.Level priorityLevel, Source source) {
         val url = CrawlerApi.createCatalogUrl(source);
-        return WebHelper.sendGetRequest(priorityLevel, url, 200).thenApplyAsync(webResponse -> {
+        return cachedResult(url, () -> WebHelper.sendGetRequest(priorityLevel, url, 200).thenApplyAsync(webResponse -> {
             try {
-                val json = (JsonObject) Jsoner.deserialize(webResponse.getBody());
+                val json = (JsonObject) parseJson(webResponse);
                 val jsonQuery = (String) json.get("query");
                 val jsonShardKey = (String) json.get("shardKey");
-                val catalogKey = new CatalogKey(jsonShardKey, jsonQuery);
-                val catalog = new Catalog(catalogKey);
-                source.getRelatedCatalogKey().set(catalogKey);
-                return new CrawledCatalog(catalog);
+                return new CatalogKey(jsonShardKey, jsonQuery);
             } catch (Exception ex) {
                 throw new CompletionException("Unable to crawl catalog! url: " + url, ex);
             }
+        })).thenApplyAsync(catalogKey -> {
+            val catalog = new Catalog(catalogKey);
+            source.getRelatedCatalogKey().set(catalogKey);
+            return new CrawledCatalog(catalog);
         });
     }
 
@@ -58,18 +81,26 @@ public class CrawlHelper {
     }
 
     public static CompletableFuture<CrawledCatalogPage> crawlCatalogPage(PrioritizedTask.Level priorityLevel, Catalog catalog, int page) {
-        if (page > catalog.getEmptyPage().get()) {
+        if (page > catalog.getLastPage().get()) {
             return CompletableFuture.completedFuture(new CrawledCatalogPage(new HashSet<>(), new HashSet<>(), new HashSet<>(), new HashSet<>()));
         }
         val url = CrawlerApi.createCatalogPageUrl(catalog, page);
-        return WebHelper.sendGetRequest(priorityLevel, url, 200, 400, 404).thenApplyAsync(webResponse -> {
+        return WebHelper.sendHedgedGetRequest(priorityLevel, url, 200, 400, 404).thenApplyAsync(webResponse -> {
             try {
                 val brands = new HashSet<Brand>();
                 val products = new HashSet<Product>();
                 val productDetails = new HashSet<ProductDetail>();
                 val positions = new HashSet<Position>();
-                if (webResponse.getCode() == 200 && !webResponse.getBody().isEmpty()) {
-                    val jsonArr = (JsonArray) ((JsonObject) ((JsonObject) Jsoner.deserialize(webResponse.getBody())).get("data")).get("products");
+                if (webResponse.getCode() == 200 && webResponse.getBody().length > 0) {
+                    val jsonData = (JsonObject) ((JsonObject) parseJson(webResponse)).get("data");
+                    val jsonArr = (JsonArray) jsonData.get("products");
+                    val jsonTotal = (BigDecimal) jsonData.get("total");
+                    if (jsonTotal != null) {
+                        limitLastPage(catalog, (jsonTotal.intValue() + CrawlerApi.Constants.PRODUCTS_PER_PAGE - 1) / CrawlerApi.Constants.PRODUCTS_PER_PAGE);
+                    }
+                    if (!jsonArr.isEmpty() && jsonArr.size() < CrawlerApi.Constants.PRODUCTS_PER_PAGE) {
+                        limitLastPage(catalog, page);
+                    }
                     for (var pos = 0; pos < jsonArr.size(); pos++) {
                         val actualPos = (page - 1) * CrawlerApi.Constants.PRODUCTS_PER_PAGE + pos + 1;
                         if (actualPos > CrawlerApi.Constants.POSITION_PLACE_CAP) {
@@ -85,9 +116,9 @@ public class CrawlHelper {
                         val jsonRating = (BigDecimal) json.get("rating");
                         val jsonFeedbacks = (BigDecimal) json.get("feedbacks");
                         val brandKey = new BrandKey(jsonBrandId.intValueExact());
-                        val brand = new Brand(brandKey, jsonBrand, CrawlerApi.createBrandImageUrl(jsonBrandId.intValueExact()));
+                        val brand = new Brand(brandKey, jsonBrand);
                         val productKey = new ProductKey(jsonId.intValueExact());
-                        val product = new Product(productKey, jsonName, CrawlerApi.createProductImageUrl(jsonId.intValueExact()));
+                        val product = new Product(productKey, jsonName);
                         product.getRelatedBrandKey().set(brandKey);
                         val productDetailKey = new ProductDetailKey(productKey);
                         val productDetail = new ProductDetail(productDetailKey, jsonPriceU.intValueExact() / 100, jsonSalePriceU.intValueExact() / 100, jsonFeedbacks.intValueExact(), jsonRating.intValueExact());
@@ -100,7 +131,7 @@ public class CrawlHelper {
                     }
                 }
                 if (brands.isEmpty() && products.isEmpty() && productDetails.isEmpty() && positions.isEmpty()) {
-                    catalog.getEmptyPage().set(page);
+                    limitLastPage(catalog, page - 1);
                 }
                 return new CrawledCatalogPage(brands, products, productDetails, positions);
             } catch (Exception ex) {
@@ -116,7 +147,7 @@ public class CrawlHelper {
     public static CompletableFuture<CrawledCategories> crawlCategories(PrioritizedTask.Level priorityLevel) {
         return WebHelper.sendGetRequest(priorityLevel, CrawlerApi.Constants.CATEGORIES_URL, 200).thenApplyAsync(webResponse -> {
             try {
-                val jsonArr = (JsonArray) Jsoner.deserialize(webResponse.getBody());
+                val jsonArr = (JsonArray) parseJson(webResponse);
                 val categories = traverseCategoryTree(jsonArr, "");
                 return new CrawledCategories(categories);
             } catch (Exception ex) {
@@ -135,8 +166,8 @@ public class CrawlHelper {
             try {
                 val queries = new HashSet<Query>();
                 val jsonArr = (JsonArray) (source instanceof Category ?
-                        Jsoner.deserialize(webResponse.getBody()) :
-                        ((JsonObject) Jsoner.deserialize(webResponse.getBody())).get("query"));
+                        parseJson(webResponse) :
+                        ((JsonObject) parseJson(webResponse)).get("query"));
                 for (val obj : jsonArr) {
                     val text = (String) obj;
                     if (!text.isEmpty()) {
@@ -161,11 +192,17 @@ public class CrawlHelper {
     }
 
     public static CompletableFuture<CrawledSeller> crawlSeller(PrioritizedTask.Level priorityLevel, Product product) {
-        val url = CrawlerApi.createSellerUrl(product.getKey().getSku());
-        return WebHelper.sendGetRequest(priorityLevel, url, 200, 404).thenApplyAsync(webResponse -> {
+        val sku = product.getKey().getSku();
+        val url = CrawlerApi.createSellerUrl(sku);
+        return cachedResult(url, () -> sendRoutedSellerRequest(priorityLevel, sku, findFreshSellerFingerprint(sku)).thenApplyAsync(webResponse -> {
             try {
+                if (webResponse.isUnchanged()) {
+                    unchangedPayloads.increment();
+                    return new CrawledSeller(null);
+                }
+                sellerFingerprints.remove(sku);
                 if (webResponse.getCode() == 200) {
-                    val json = (JsonObject) Jsoner.deserialize(webResponse.getBody());
+                    val json = (JsonObject) parseJson(webResponse);
                     val jsonSupplierName = (String) json.get("supplierName");
                     val jsonTrademark = (String) json.get("trademark");
                     val name = jsonTrademark != null && !jsonTrademark.isEmpty() ? jsonTrademark : jsonSupplierName;
@@ -176,8 +213,8 @@ public class CrawlHelper {
                         val jsonOgrnip = (String) json.get("ogrnip");
                         val jsonLegalAddress = (String) json.get("legalAddress");
                         val sellerKey = new SellerKey(jsonSupplierId.intValueExact());
-                        val seller = new Seller(sellerKey, name, CrawlerApi.createSellerImageUrl(jsonSupplierId.intValueExact()), jsonInn, jsonOgrn, jsonOgrnip, jsonLegalAddress);
-                        product.getRelatedSellerKey().set(sellerKey);
+                        val seller = new Seller(sellerKey, name, jsonInn, jsonOgrn, jsonOgrnip, jsonLegalAddress);
+                        sellerFingerprints.put(sku, new SellerFingerprint(webResponse.getFingerprint(), sellerKey).encode());
                         return new CrawledSeller(seller);
                     }
                 }
@@ -185,6 +222,12 @@ public class CrawlHelper {
             } catch (Exception ex) {
                 throw new CompletionException("Unable to crawl seller! url: " + url, ex);
             }
+        })).thenApplyAsync(crawled -> {
+            val sellerKey = crawled.getSeller() != null ? crawled.getSeller().getKey() : findSellerKey(sku);
+            if (sellerKey != null) {
+                product.getRelatedSellerKey().set(sellerKey);
+            }
+            return crawled;
         });
     }
 
@@ -211,7 +254,7 @@ public class CrawlHelper {
                 val sizes = new HashSet<Size>();
                 val warehouses = new HashSet<Warehouse>();
                 val stocks = new HashSet<Stock>();
-                val jsonArr = (JsonArray) ((JsonObject) ((JsonObject) Jsoner.deserialize(webResponse.getBody())).get("data")).get("products");
+                val jsonArr = (JsonArray) ((JsonObject) ((JsonObject) parseJson(webResponse)).get("data")).get("products");
                 for (val obj : jsonArr) {
                     val json = (JsonObject) obj;
                     val jsonId = (BigDecimal) json.get("id");
@@ -270,6 +313,156 @@ public class CrawlHelper {
         return future;
     }
 
+    public static void setSellerFingerprintStore(Map<Integer, Object[]> store) {
+        sellerFingerprints = store;
+    }
+
+    public static int pruneSellerFingerprints() {
+        val nowMs = System.currentTimeMillis();
+        val expired = new ArrayList<Integer>();
+        synchronized (sellerFingerprints) {
+            for (val entry : sellerFingerprints.entrySet()) {
+                if (nowMs - SellerFingerprint.decode(entry.getValue()).getFingerprint().getCreatedMs() >= CrawlerApi.Constants.FINGERPRINT_MAX_AGE_MS) {
+                    expired.add(entry.getKey());
+                }
+            }
+        }
+        for (val sku : expired) {
+            sellerFingerprints.remove(sku);
+        }
+        return expired.size();
+    }
+
+    public static int getSellerFingerprintCount() {
+        return sellerFingerprints.size();
+    }
+
+    public static long getSellerRequests() {
+        return sellerRequests.sum();
+    }
+
+    public static long getFingerprintedRequests() {
+        return fingerprintedRequests.sum();
+    }
+
+    public static long getUnchangedPayloads() {
+        return unchangedPayloads.sum();
+    }
+
+    private static CompletableFuture<WebResponse> sendRoutedSellerRequest(PrioritizedTask.Level priorityLevel, int sku, Fingerprint previous) {
+        val routes = CrawlerApi.getBasketRoutes();
+        val basket = routes.basketOf(sku);
+        return WebHelper.sendConditionalGetRequest(priorityLevel, CrawlerApi.createSellerUrl(sku, basket), previous, 200, 404).thenComposeAsync(webResponse -> {
+            routes.recordRequest(basket, webResponse.getCode() != 404);
+            if (webResponse.getCode() != 404 || !routes.isNearBoundary(sku, basket, CrawlerApi.Constants.BASKET_PROBE_MARGIN)) {
+                return CompletableFuture.completedFuture(webResponse);
+            }
+            return probeNeighbourBaskets(priorityLevel, sku, routes.neighboursOf(basket), 0, webResponse);
+        });
+    }
+
+    private static CompletableFuture<WebResponse> probeNeighbourBaskets(PrioritizedTask.Level priorityLevel, int sku, int[] baskets, int index, WebResponse missed) {
+        if (index >= baskets.length) {
+            return CompletableFuture.completedFuture(missed);
+        }
+        val routes = CrawlerApi.getBasketRoutes();
+        val basket = baskets[index];
+        return WebHelper.sendGetRequest(priorityLevel, CrawlerApi.createSellerUrl(sku, basket), 200, 404).handle((webResponse, ex) -> {
+            val found = ex == null && webResponse.getCode() == 200;
+            routes.recordRequest(basket, found);
+            if (found) {
+                routes.learn(sku, basket);
+                return CompletableFuture.completedFuture(webResponse);
+            }
+            return probeNeighbourBaskets(priorityLevel, sku, baskets, index + 1, missed);
+        }).thenCompose(future -> future);
+    }
+
+    private static Object parseJson(WebResponse webResponse) throws JsonException {
+        return Jsoner.deserialize(new InputStreamReader(new ByteArrayInputStream(webResponse.getBody()), StandardCharsets.UTF_8));
+    }
+
+    private static Fingerprint findFreshSellerFingerprint(int sku) {
+        sellerRequests.increment();
+        val encoded = sellerFingerprints.get(sku);
+        if (encoded == null) {
+            return null;
+        }
+        val fingerprint = SellerFingerprint.decode(encoded).getFingerprint();
+        if (System.currentTimeMillis() - fingerprint.getCreatedMs() >= CrawlerApi.Constants.FINGERPRINT_MAX_AGE_MS) {
+            return null;
+        }
+        fingerprintedRequests.increment();
+        return fingerprint;
+    }
+
+    private static SellerKey findSellerKey(int sku) {
+        val encoded = sellerFingerprints.get(sku);
+        return encoded != null ? SellerFingerprint.decode(encoded).getSellerKey() : null;
+    }
+
+    private static Map<Integer, Object[]> createFingerprintCache() {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Object[]> eldest) {
+                return size() > CrawlerApi.Constants.FINGERPRINT_CACHE_MAX_SIZE;
+            }
+        });
+    }
+
+    private static void limitLastPage(Catalog catalog, int lastPage) {
+        catalog.getLastPage().accumulateAndGet(lastPage, Math::min);
+    }
+
+    public static void setResultScope(String scope) {
+        if (!scope.equals(resultScope)) {
+            resultCache.clear();
+            resultScope = scope;
+        }
+    }
+
+    public static long getResultCacheHits() {
+        return resultCacheHits.sum();
+    }
+
+    public static long getResultCacheMisses() {
+        return resultCacheMisses.sum();
+    }
+
+    private static <T> CompletableFuture<T> cachedResult(String url, Supplier<CompletableFuture<T>> loader) {
+        if (resultCache.size() >= CrawlerApi.Constants.RESULT_CACHE_MAX_SIZE) {
+            evictCompletedResults();
+        }
+        val cacheKey = resultScope + "_" + url;
+        val future = new CompletableFuture<T>();
+        val cached = putCachedResult(cacheKey, future);
+        if (cached != null) {
+            resultCacheHits.increment();
+            return cached;
+        }
+        resultCacheMisses.increment();
+        loader.get().whenComplete((result, ex) -> {
+            if (ex != null) {
+                resultCache.remove(cacheKey, future);
+                future.completeExceptionally(ex);
+            } else {
+                future.complete(result);
+            }
+        });
+        return future;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> CompletableFuture<T> putCachedResult(String cacheKey, CompletableFuture<T> future) {
+        return (CompletableFuture<T>) resultCache.putIfAbsent(cacheKey, future);
+    }
+
+    private static synchronized void evictCompletedResults() {
+        if (resultCache.size() >= CrawlerApi.Constants.RESULT_CACHE_MAX_SIZE) {
+            resultCache.values().removeIf(CompletableFuture::isDone);
+        }
+    }
+
     private static HashSet<Category> traverseCategoryTree(JsonArray jsonArr, String prefix) {
         val categories = new HashSet<Category>();
         for (val obj : jsonArr) {
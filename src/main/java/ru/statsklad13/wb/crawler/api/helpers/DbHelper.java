@@ -5,26 +5,51 @@ import com.zaxxer.hikari.HikariDataSource;
 import lombok.Cleanup;
 import lombok.val;
 import ru.statsklad13.wb.crawler.api.CrawlerApi;
+import ru.statsklad13.wb.crawler.api.data.misc.OrchestratedFuture;
 
+import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
 public class DbHelper {
 
     private static HikariDataSource hikari;
+    private static final LongAdder executedStatements = new LongAdder();
+    private static final LongAdder busyNanos = new LongAdder();
+    private static final LongAdder borrowedConnections = new LongAdder();
+    private static final LongAdder poolWaitNanos = new LongAdder();
+    private static final LongAccumulator maxPoolWaitNanos = new LongAccumulator(Math::max, 0);
     private static ExecutorService executor;
+    private static ResizableSemaphore permits;
+    private static int permitCount;
 
     public static void init() {
         val cfg = new HikariConfig();
         cfg.setJdbcUrl(CrawlerApi.Settings.getDatabaseUrl());
         cfg.setUsername(CrawlerApi.Settings.getDatabaseUsername());
         cfg.setPassword(CrawlerApi.Settings.getDatabasePasswordOnce());
-        hikari = new HikariDataSource(cfg);
+        cfg.setConnectionTimeout(CrawlerApi.Settings.getDatabaseConnectionTimeoutMs());
         val th = CrawlerApi.Settings.getDatabaseThreads();
-        executor = new ThreadPoolExecutor(th, th, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
-                CrawlerApi.createFactory("WB CrawlerApi Database Thread", true));
+        cfg.setPoolName("WB CrawlerApi Database Pool");
+        cfg.setMaximumPoolSize(th);
+        cfg.setMinimumIdle(th);
+        cfg.addDataSourceProperty("prepareThreshold", CrawlerApi.Settings.getDatabasePrepareThreshold());
+        cfg.addDataSourceProperty("preparedStatementCacheQueries", CrawlerApi.Settings.getDatabaseStatementCacheSize());
+        hikari = new HikariDataSource(cfg);
+        if (CrawlerApi.isVirtualThreadsEnabled()) {
+            executor = CrawlerApi.createTaskExecutor("WB CrawlerApi Database Thread");
+            permits = new ResizableSemaphore(th);
+            permitCount = th;
+        } else {
+            executor = new ThreadPoolExecutor(th, th, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                    CrawlerApi.createFactory("WB CrawlerApi Database Thread", true));
+        }
+        CrawlerApi.Settings.addReloadListener(DbHelper::applySettings);
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             hikari.close();
             executor.shutdownNow();
@@ -32,9 +57,9 @@ public class DbHelper {
     }
 
     public static CompletableFuture<Void> executeUpdate(String sql, Object... args) {
-        return CompletableFuture.runAsync(() -> {
+        return OrchestratedFuture.runAsync(() -> runBounded(() -> {
             try {
-                @Cleanup val connection = hikari.getConnection();
+                @Cleanup val connection = borrowConnection();
                 @Cleanup val statement = connection.prepareStatement(sql);
                 for (var i = 0; i < args.length; i++) {
                     statement.setObject(i + 1, args[i]);
@@ -43,7 +68,30 @@ public class DbHelper {
             } catch (Exception ex) {
                 throw new CompletionException("Unable to execute DB update " + sql + " with args " + Arrays.toString(args), ex);
             }
-        }, executor);
+        }), executor);
+    }
+
+    public static CompletableFuture<Void> executeTransaction(String... sqls) {
+        return OrchestratedFuture.runAsync(() -> runBounded(() -> {
+            try {
+                @Cleanup val connection = borrowConnection();
+                connection.setAutoCommit(false);
+                try {
+                    for (val sql : sqls) {
+                        @Cleanup val statement = connection.prepareStatement(sql);
+                        statement.executeUpdate();
+                    }
+                    connection.commit();
+                } catch (Exception ex) {
+                    connection.rollback();
+                    throw ex;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            } catch (Exception ex) {
+                throw new CompletionException("Unable to execute DB transaction " + Arrays.toString(sqls), ex);
+            }
+        }), executor);
     }
 
     public static CompletableFuture<Void> executeQuery(Consumer<ResultSet> action, String sql, Object... args) {
@@ -51,9 +99,9 @@ public class DbHelper {
     }
 
     public static CompletableFuture<Void> executeQuery(int batchSize, Consumer<ResultSet> action, String sql, Object... args) {
-        return CompletableFuture.runAsync(() -> {
+        return OrchestratedFuture.runAsync(() -> runBounded(() -> {
             try {
-                @Cleanup val connection = hikari.getConnection();
+                @Cleanup val connection = borrowConnection();
                 if (batchSize > 0) {
                     connection.setAutoCommit(false);
                 }
@@ -72,7 +120,104 @@ public class DbHelper {
             } catch (Exception ex) {
                 throw new CompletionException("Unable to execute DB query " + sql + " with args " + Arrays.toString(args), ex);
             }
-        }, executor);
+        }), executor);
+    }
+
+    public static long getExecutedStatements() {
+        return executedStatements.sum();
+    }
+
+    public static long getBusyMs() {
+        return TimeUnit.NANOSECONDS.toMillis(busyNanos.sum());
+    }
+
+    public static long getBorrowedConnections() {
+        return borrowedConnections.sum();
+    }
+
+    public static long getPoolWaitMs() {
+        return TimeUnit.NANOSECONDS.toMillis(poolWaitNanos.sum());
+    }
+
+    public static long getMaxPoolWaitMs() {
+        return TimeUnit.NANOSECONDS.toMillis(maxPoolWaitNanos.get());
+    }
+
+    public static long getStatementMs() {
+        return TimeUnit.NANOSECONDS.toMillis(busyNanos.sum() - poolWaitNanos.sum());
+    }
+
+    public static int getActiveConnections() {
+        return hikari.getHikariPoolMXBean().getActiveConnections();
+    }
+
+    public static int getAwaitingConnections() {
+        return hikari.getHikariPoolMXBean().getThreadsAwaitingConnection();
+    }
+
+    private static Connection borrowConnection() throws SQLException {
+        val startNanos = System.nanoTime();
+        try {
+            return hikari.getConnection();
+        } finally {
+            val waitNanos = System.nanoTime() - startNanos;
+            borrowedConnections.increment();
+            poolWaitNanos.add(waitNanos);
+            maxPoolWaitNanos.accumulate(waitNanos);
+        }
+    }
+
+    private static synchronized void applySettings() {
+        val th = CrawlerApi.Settings.getDatabaseThreads();
+        if (permits != null) {
+            permits.resize(th - permitCount);
+            permitCount = th;
+        } else {
+            CrawlerApi.resizeExecutor((ThreadPoolExecutor) executor, th);
+        }
+        val pool = hikari.getHikariConfigMXBean();
+        pool.setConnectionTimeout(CrawlerApi.Settings.getDatabaseConnectionTimeoutMs());
+        if (th > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(th);
+            pool.setMinimumIdle(th);
+        } else {
+            pool.setMinimumIdle(th);
+            pool.setMaximumPoolSize(th);
+        }
+    }
+
+    private static void runBounded(Runnable task) {
+        if (permits != null) {
+            permits.acquireUninterruptibly();
+        }
+        val startNanos = System.nanoTime();
+        try {
+            task.run();
+        } finally {
+            busyNanos.add(System.nanoTime() - startNanos);
+            executedStatements.increment();
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+    private static class ResizableSemaphore extends Semaphore {
+
+        private static final long serialVersionUID = 1L;
+
+        public ResizableSemaphore(int permits) {
+            super(permits);
+        }
+
+        public void resize(int delta) {
+            if (delta > 0) {
+                release(delta);
+            } else if (delta < 0) {
+                reducePermits(-delta);
+            }
+        }
+
     }
 
 }
@@ -1,28 +1,94 @@
 package ru.statsklad13.wb.crawler.api.helpers;
 
+import dev.failsafe.CircuitBreaker;
+import dev.failsafe.CircuitBreakerOpenException;
+import dev.failsafe.Failsafe;
+import dev.failsafe.RetryPolicy;
+import dev.failsafe.spi.Scheduler;
 import lombok.val;
 import okhttp3.*;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.GzipSource;
+import okio.Okio;
+import okio.Source;
 import ru.statsklad13.wb.crawler.api.CrawlerApi;
+import ru.statsklad13.wb.crawler.api.data.misc.Egress;
+import ru.statsklad13.wb.crawler.api.data.misc.EndpointTransferStats;
+import ru.statsklad13.wb.crawler.api.data.misc.Fingerprint;
+import ru.statsklad13.wb.crawler.api.data.misc.HedgeStats;
+import ru.statsklad13.wb.crawler.api.data.misc.HostConnectionStats;
 import ru.statsklad13.wb.crawler.api.data.misc.PrioritizedTask;
 import ru.statsklad13.wb.crawler.api.data.misc.WebResponse;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.SocketFactory;
 
 public class WebHelper {
 
+    private static final double RETRY_JITTER = 0.25;
+    private static final int HEDGE_MIN_SAMPLES = 50;
+
     private static OkHttpClient client;
-    private static ExecutorService executor;
+    private static ThreadPoolExecutor executor;
+    private static ScheduledExecutorService retryScheduler;
+    private static volatile EnumMap<CrawlerApi.EndpointClass, RetryPolicy<WebResponse>> retryPolicies;
+    private static final ConcurrentHashMap<String, CircuitBreaker<WebResponse>> circuitBreakers = new ConcurrentHashMap<>();
+    private static volatile int breakerFailureRate;
+    private static volatile long breakerDelayMs;
+    private static final LongAdder retries = new LongAdder();
+    private static final LongAdder rejectedAttempts = new LongAdder();
+    private static final ConcurrentHashMap<String, HedgeStats> hedgeStats = new ConcurrentHashMap<>();
+    private static final LongAdder hedgeableRequests = new LongAdder();
+    private static final LongAdder hedgedRequests = new LongAdder();
+    private static final ConcurrentHashMap<String, CompletableFuture<WebResponse>> inFlightRequests = new ConcurrentHashMap<>();
+    private static final LongAdder totalRequests = new LongAdder();
+    private static final LongAdder sharedRequests = new LongAdder();
+    private static final ConcurrentHashMap<String, OkHttpClient> hostClients = new ConcurrentHashMap<>();
+    private static final List<Egress> egresses = new ArrayList<>();
+    private static final ConcurrentHashMap<String, HostConnectionStats> connectionStats = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, EndpointTransferStats> transferStats = new ConcurrentHashMap<>();
+    private static String acceptEncoding;
 
     public static void init() {
+        for (val spec : CrawlerApi.Settings.getWebEgresses()) {
+            try {
+                egresses.add(Egress.parse(spec));
+            } catch (IOException ex) {
+                throw new IllegalArgumentException("Unable to resolve egress " + spec, ex);
+            }
+        }
+        if (egresses.isEmpty()) {
+            throw new IllegalArgumentException("At least one egress is required");
+        }
+        acceptEncoding = negotiateEncodings(CrawlerApi.Settings.getWebAcceptEncoding());
         val disp = new Dispatcher();
         disp.setMaxRequests(Integer.MAX_VALUE);
         disp.setMaxRequestsPerHost(Integer.MAX_VALUE);
         client = new OkHttpClient.Builder()
-                .connectionPool(new ConnectionPool(100, 1, TimeUnit.MINUTES))
                 .dispatcher(disp)
                 .protocols(List.of(Protocol.HTTP_1_1))
+                .eventListenerFactory(WebHelper::createConnectionListener)
+                .addInterceptor(WebHelper::decodeResponse)
                 .retryOnConnectionFailure(false)
                 .followRedirects(false)
                 .followSslRedirects(false)
@@ -30,7 +96,11 @@ public class WebHelper {
         val th = CrawlerApi.Settings.getWebThreads();
         executor = new ThreadPoolExecutor(th, th, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(),
                 CrawlerApi.createFactory("WB CrawlerApi Web Thread", true));
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(CrawlerApi.createFactory("WB CrawlerApi Retry Thread", false));
+        applySettings();
+        CrawlerApi.Settings.addReloadListener(WebHelper::applySettings);
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            retryScheduler.shutdownNow();
             executor.shutdownNow();
         }));
     }
@@ -40,43 +110,440 @@ public class WebHelper {
     }
 
     public static CompletableFuture<WebResponse> sendGetRequest(PrioritizedTask.Level priorityLevel, String url, int... allowedCodes) {
+        return sendConditionalGetRequest(priorityLevel, url, null, allowedCodes);
+    }
+
+    public static CompletableFuture<WebResponse> sendConditionalGetRequest(PrioritizedTask.Level priorityLevel, String url, Fingerprint previous, int... allowedCodes) {
+        return sendRequest(priorityLevel, url, previous, false, allowedCodes);
+    }
+
+    public static CompletableFuture<WebResponse> sendHedgedGetRequest(PrioritizedTask.Level priorityLevel, String url, int... allowedCodes) {
+        return sendRequest(priorityLevel, url, null, CrawlerApi.Settings.isWebHedgingEnabled(), allowedCodes);
+    }
+
+    private static CompletableFuture<WebResponse> sendRequest(PrioritizedTask.Level priorityLevel, String url, Fingerprint previous, boolean hedged, int... allowedCodes) {
+        val flightKey = Arrays.toString(allowedCodes) + (previous != null ? previous.hashCode() : "") + url;
         val future = new CompletableFuture<WebResponse>();
-        executor.execute(new PrioritizedTask<>(() -> {
-            val request = new Request.Builder()
-                    .url(url)
-                    .build();
-            var retryCount = -1;
-            Response response = null;
-            WebResponse webResponse = null;
-            Exception lastEx = null;
-            while (retryCount < CrawlerApi.Settings.getWebMaxRetries()) {
-                try {
-                    response = sendGetRequestAttempt(request, allowedCodes);
-                    webResponse = new WebResponse(response.body().string(), response.code());
-                    break;
-                } catch (Exception ex) {
-                    if (response != null) {
-                        response.close();
-                    }
-                    lastEx = ex;
+        val inFlight = inFlightRequests.putIfAbsent(flightKey, future);
+        totalRequests.increment();
+        if (inFlight != null) {
+            sharedRequests.increment();
+            return inFlight;
+        }
+        future.whenComplete((ignored, ignoredEx) -> {
+            inFlightRequests.remove(flightKey, future);
+        });
+        val endpoint = CrawlerApi.resolveEndpointName(url);
+        val requestBuilder = new Request.Builder()
+                .url(url)
+                .tag(String.class, endpoint);
+        var attemptCodes = allowedCodes;
+        if (previous != null && previous.getEtag() != null) {
+            requestBuilder.header("If-None-Match", previous.getEtag());
+            attemptCodes = Arrays.copyOf(allowedCodes, allowedCodes.length + 1);
+            attemptCodes[allowedCodes.length] = 304;
+        }
+        val request = requestBuilder.build();
+        val execution = hedged ?
+                executeHedgedRequest(priorityLevel, endpoint, request, attemptCodes) :
+                executeRequest(priorityLevel, endpoint, request, previous, attemptCodes);
+        execution.whenComplete((webResponse, ex) -> {
+            if (ex != null) {
+                future.completeExceptionally(new CompletionException("Unable to send GET request to " + url, ex));
+            } else {
+                future.complete(webResponse);
+            }
+        });
+        return future;
+    }
+
+    private static CompletableFuture<WebResponse> executeRequest(PrioritizedTask.Level priorityLevel, String endpoint, Request request, Fingerprint previous, int[] validCodes) {
+        val activeCall = new AtomicReference<Call>();
+        val execution = Failsafe.with(retryPolicies.get(CrawlerApi.classifyEndpoint(endpoint)), getCircuitBreaker(request.url().host()))
+                .with(createScheduler(priorityLevel))
+                .getAsync(() -> {
+                    Response response = null;
                     try {
-                        Thread.sleep(CrawlerApi.Settings.getWebRetryDelayMs());
-                    } catch (Exception ignored) {
+                        response = sendGetRequestAttempt(request, validCodes, activeCall);
+                        return createWebResponse(response, previous);
+                    } catch (Exception ex) {
+                        if (response != null) {
+                            response.close();
+                        }
+                        throw ex;
                     }
+                });
+        execution.whenComplete((ignored, ex) -> {
+            if (ex instanceof CircuitBreakerOpenException) {
+                rejectedAttempts.increment();
+            } else if (ex instanceof CancellationException) {
+                val call = activeCall.get();
+                if (call != null) {
+                    call.cancel();
                 }
-                retryCount++;
             }
-            if (webResponse == null) {
-                throw new CompletionException("Unable to send GET request to " + url, lastEx);
+        });
+        return execution;
+    }
+
+    private static CompletableFuture<WebResponse> executeHedgedRequest(PrioritizedTask.Level priorityLevel, String endpoint, Request request, int[] validCodes) {
+        val stats = hedgeStats.computeIfAbsent(endpoint, ignored -> new HedgeStats());
+        val startNs = System.nanoTime();
+        val result = new CompletableFuture<WebResponse>();
+        val pendingLegs = new AtomicInteger(1);
+        hedgeableRequests.increment();
+        val primary = executeRequest(priorityLevel, endpoint, request, null, validCodes);
+        primary.whenComplete((webResponse, ex) -> completeHedgeLeg(result, pendingLegs, stats, startNs, webResponse, ex));
+        val thresholdMs = stats.getAttemptLatency().getCount() >= HEDGE_MIN_SAMPLES ? stats.getAttemptLatency().quantile(0.95) : -1;
+        if (thresholdMs >= 0) {
+            retryScheduler.schedule(() -> {
+                if (result.isDone() || !tryAcquireHedge()) {
+                    return;
+                }
+                if (result.isDone()) {
+                    hedgedRequests.decrement();
+                    return;
+                }
+                stats.recordHedge();
+                pendingLegs.incrementAndGet();
+                val hedgeStartNs = System.nanoTime();
+                val hedge = executeRequest(PrioritizedTask.Level.HIGH, endpoint, request, null, validCodes);
+                hedge.whenComplete((webResponse, ex) -> {
+                    if (ex == null && !result.isDone()) {
+                        stats.recordHedgeWin();
+                    }
+                    completeHedgeLeg(result, pendingLegs, stats, hedgeStartNs, webResponse, ex);
+                });
+                result.whenComplete((ignored, ignoredEx) -> hedge.cancel(true));
+            }, thresholdMs, TimeUnit.MILLISECONDS);
+        }
+        result.whenComplete((ignored, ignoredEx) -> {
+            primary.cancel(true);
+            stats.getObservedLatency().record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs));
+        });
+        return result;
+    }
+
+    private static void completeHedgeLeg(CompletableFuture<WebResponse> result, AtomicInteger pendingLegs, HedgeStats stats, long startNs, WebResponse webResponse, Throwable ex) {
+        if (ex == null) {
+            stats.getAttemptLatency().record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs));
+            result.complete(webResponse);
+        } else if (pendingLegs.decrementAndGet() == 0) {
+            result.completeExceptionally(ex);
+        }
+    }
+
+    private static boolean tryAcquireHedge() {
+        synchronized (hedgedRequests) {
+            if (hedgedRequests.sum() + 1 > CrawlerApi.Settings.getWebHedgeBudget() * hedgeableRequests.sum()) {
+                return false;
             }
-            return webResponse;
-        }, future, priorityLevel));
-        return future;
+            hedgedRequests.increment();
+            return true;
+        }
+    }
+
+    public static long getTotalRequests() {
+        return totalRequests.sum();
+    }
+
+    public static long getSharedRequests() {
+        return sharedRequests.sum();
     }
 
-    private static Response sendGetRequestAttempt(Request request, int[] allowedCodes) throws IOException {
-        val response = client.newCall(request).execute();
+    public static Map<String, HedgeStats> getHedgeStats() {
+        return hedgeStats;
+    }
+
+    public static long getHedgedRequests() {
+        return hedgedRequests.sum();
+    }
+
+    public static long getHedgeableRequests() {
+        return hedgeableRequests.sum();
+    }
+
+    public static long getRetries() {
+        return retries.sum();
+    }
+
+    public static long getRejectedAttempts() {
+        return rejectedAttempts.sum();
+    }
+
+    public static Map<String, CircuitBreaker.State> getCircuitStates() {
+        val states = new TreeMap<String, CircuitBreaker.State>();
+        circuitBreakers.forEach((host, breaker) -> states.put(host, breaker.getState()));
+        return states;
+    }
+
+    private static synchronized void applySettings() {
+        CrawlerApi.resizeExecutor(executor, CrawlerApi.Settings.getWebThreads());
+        val policies = new EnumMap<CrawlerApi.EndpointClass, RetryPolicy<WebResponse>>(CrawlerApi.EndpointClass.class);
+        for (val endpointClass : CrawlerApi.EndpointClass.values()) {
+            policies.put(endpointClass, createRetryPolicy(endpointClass));
+        }
+        retryPolicies = policies;
+        if (breakerFailureRate != CrawlerApi.Settings.getWebBreakerFailureRate() || breakerDelayMs != CrawlerApi.Settings.getWebBreakerDelayMs()) {
+            breakerFailureRate = CrawlerApi.Settings.getWebBreakerFailureRate();
+            breakerDelayMs = CrawlerApi.Settings.getWebBreakerDelayMs();
+            circuitBreakers.clear();
+        }
+    }
+
+    private static RetryPolicy<WebResponse> createRetryPolicy(CrawlerApi.EndpointClass endpointClass) {
+        val baseDelayMs = Math.max(1, CrawlerApi.Settings.getWebRetryDelayMs());
+        val maxDelayMs = Math.max(baseDelayMs, switch (endpointClass) {
+            case SEARCH -> CrawlerApi.Settings.getWebRetryMaxDelayMs();
+            case CARD -> CrawlerApi.Settings.getWebRetryMaxDelayMs() / 2;
+            case STATIC -> CrawlerApi.Settings.getWebRetryMaxDelayMs() / 6;
+        });
+        val maxRetries = endpointClass == CrawlerApi.EndpointClass.STATIC ?
+                Math.min(3, CrawlerApi.Settings.getWebMaxRetries()) :
+                CrawlerApi.Settings.getWebMaxRetries();
+        return RetryPolicy.<WebResponse>builder()
+                .handle(IOException.class)
+                .withMaxRetries(maxRetries)
+                .withDelayFn(context -> {
+                    val lastEx = context.getLastException();
+                    if (lastEx instanceof ResponseCodeException && ((ResponseCodeException) lastEx).getRetryAfterMs() > 0) {
+                        return Duration.ofMillis(Math.min(((ResponseCodeException) lastEx).getRetryAfterMs(), CrawlerApi.Settings.getWebRetryMaxDelayMs()));
+                    }
+                    val backoffMs = Math.min(maxDelayMs, baseDelayMs << Math.min(20, Math.max(0, context.getAttemptCount() - 1)));
+                    return Duration.ofMillis((long) (backoffMs * (1 - RETRY_JITTER + ThreadLocalRandom.current().nextDouble() * 2 * RETRY_JITTER)));
+                })
+                .onRetry(event -> retries.increment())
+                .build();
+    }
+
+    private static CircuitBreaker<WebResponse> getCircuitBreaker(String host) {
+        return circuitBreakers.computeIfAbsent(host, ignored -> CircuitBreaker.<WebResponse>builder()
+                .handleIf((result, ex) -> ex instanceof IOException &&
+                        (!(ex instanceof ResponseCodeException) || ((ResponseCodeException) ex).isOverloaded()))
+                .withFailureRateThreshold(breakerFailureRate, 20, Duration.ofMinutes(1))
+                .withDelay(Duration.ofMillis(breakerDelayMs))
+                .withSuccessThreshold(3)
+                .build());
+    }
+
+    private static Scheduler createScheduler(PrioritizedTask.Level priorityLevel) {
+        return (callable, delay, unit) -> retryScheduler.schedule(() -> {
+            executor.execute(new PrioritizedTask<>(() -> {
+                try {
+                    return callable.call();
+                } catch (Exception ex) {
+                    throw new CompletionException(ex);
+                }
+            }, new CompletableFuture<>(), priorityLevel));
+        }, delay, unit);
+    }
+
+    private static long parseRetryAfterMs(String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(retryAfter.trim()) * 1000;
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            return Math.max(0, ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (Exception ignored) {
+            return 0;
+        }
+    }
+
+    public static Map<String, HostConnectionStats> getConnectionStats() {
+        return connectionStats;
+    }
+
+    public static Map<String, EndpointTransferStats> getTransferStats() {
+        return transferStats;
+    }
+
+    public static String getAcceptEncoding() {
+        return acceptEncoding;
+    }
+
+    private static String negotiateEncodings(String configured) {
+        val sj = new StringJoiner(", ");
+        for (val coding : configured.split(",")) {
+            val trimmed = coding.trim().toLowerCase();
+            if (trimmed.equals("gzip")) {
+                sj.add(trimmed);
+            }
+        }
+        return sj.length() > 0 ? sj.toString() : "identity";
+    }
+
+    private static Response decodeResponse(Interceptor.Chain chain) throws IOException {
+        val request = chain.request();
+        val endpoint = request.tag(String.class);
+        val stats = transferStats.computeIfAbsent(endpoint != null ? endpoint : request.url().host(), ignored -> new EndpointTransferStats());
+        val response = chain.proceed(request.newBuilder().header("Accept-Encoding", acceptEncoding).build());
+        val body = response.body();
+        val encoding = response.header("Content-Encoding", "identity").trim().toLowerCase();
+        val compressed = encoding.equals("gzip");
+        if (body == null || response.code() == 204 || response.code() == 304 || !compressed && !encoding.equals("identity")) {
+            stats.recordResponse(false);
+            return response;
+        }
+        stats.recordResponse(compressed);
+        val wire = new CountingSource(body.source());
+        Source decoder = compressed ? new GzipSource(wire) : wire;
+        val decoded = new CountingSource(decoder) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                stats.recordWireBytes(wire.bytes);
+                stats.recordDecodedBytes(this.bytes, compressed ? this.nanos - wire.nanos : 0);
+            }
+        };
+        return response.newBuilder()
+                .removeHeader("Content-Encoding")
+                .removeHeader("Content-Length")
+                .body(ResponseBody.create(Okio.buffer(decoded), body.contentType(), compressed ? -1 : body.contentLength()))
+                .build();
+    }
+
+    private static HostConnectionStats getHostStats(String host) {
+        return connectionStats.computeIfAbsent(host, ignored -> new HostConnectionStats());
+    }
+
+    public static List<Egress> getEgresses() {
+        return egresses;
+    }
+
+    private static Egress selectEgress() {
+        if (egresses.size() == 1) {
+            return egresses.get(0);
+        }
+        val nowMs = System.currentTimeMillis();
+        Egress selected = null;
+        Egress soonest = null;
+        for (val egress : egresses) {
+            if (egress.isAvailable(nowMs)) {
+                if (selected == null || egress.getInFlight() < selected.getInFlight() ||
+                        egress.getInFlight() == selected.getInFlight() && egress.getRequests() < selected.getRequests()) {
+                    selected = egress;
+                }
+            } else if (soonest == null || egress.getEjectedUntilMs() < soonest.getEjectedUntilMs()) {
+                soonest = egress;
+            }
+        }
+        return selected != null ? selected : soonest;
+    }
+
+    private static OkHttpClient getHostClient(Egress egress, String host) {
+        return hostClients.computeIfAbsent(egress.getId() + "|" + host,
+                ignored -> createHostClient(egress, CrawlerApi.Settings.isWebHttp2Enabled() && !getHostStats(host).isHttp1Fallback()));
+    }
+
+    private static OkHttpClient createHostClient(Egress egress, boolean http2) {
+        val builder = client.newBuilder()
+                .connectionPool(new ConnectionPool(CrawlerApi.Settings.getWebMaxIdlePerHost(), CrawlerApi.Settings.getWebKeepAliveMs(), TimeUnit.MILLISECONDS))
+                .protocols(http2 ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1) : List.of(Protocol.HTTP_1_1))
+                .proxy(egress.getProxy());
+        if (egress.getLocalAddress() != null) {
+            builder.socketFactory(new BoundSocketFactory(egress.getLocalAddress()));
+        }
+        return builder.build();
+    }
+
+    private static void fallBackToHttp1(String host) {
+        val stats = getHostStats(host);
+        if (!stats.isHttp1Fallback()) {
+            stats.markHttp1Fallback();
+            for (val egress : egresses) {
+                val previous = hostClients.remove(egress.getId() + "|" + host);
+                if (previous != null) {
+                    previous.connectionPool().evictAll();
+                }
+            }
+        }
+    }
+
+    private static boolean isHttp2Failure(IOException ex) {
+        return ex.getClass().getName().startsWith("okhttp3.internal.http2.");
+    }
+
+    private static EventListener createConnectionListener(Call call) {
+        val stats = getHostStats(call.request().url().host());
+        return new EventListener() {
+            private boolean connected;
+            private long handshakeStartNs;
+
+            @Override
+            public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+                this.connected = true;
+                stats.recordConnection();
+            }
+
+            @Override
+            public void secureConnectStart(Call call) {
+                this.handshakeStartNs = System.nanoTime();
+            }
+
+            @Override
+            public void secureConnectEnd(Call call, Handshake handshake) {
+                stats.recordHandshake(System.nanoTime() - this.handshakeStartNs);
+            }
+
+            @Override
+            public void responseHeadersEnd(Call call, Response response) {
+                stats.recordRequest(!this.connected);
+                if (response.protocol() == Protocol.HTTP_2) {
+                    stats.recordHttp2Response();
+                }
+            }
+        };
+    }
+
+    private static WebResponse createWebResponse(Response response, Fingerprint previous) throws IOException {
+        if (response.code() == 304 && previous != null) {
+            response.close();
+            return new WebResponse(null, 304, previous, true);
+        }
+        val body = readBody(response);
+        val contentHash = hashBody(body);
+        val unchanged = previous != null && previous.getContentHash() == contentHash;
+        val fingerprint = new Fingerprint(response.header("ETag"), contentHash, unchanged ? previous.getCreatedMs() : System.currentTimeMillis());
+        return new WebResponse(body, response.code(), fingerprint, unchanged);
+    }
+
+    private static byte[] readBody(Response response) throws IOException {
+        try (val body = response.body()) {
+            return body.bytes();
+        }
+    }
+
+    private static long hashBody(byte[] body) {
+        var hash = 0xcbf29ce484222325L;
+        for (val b : body) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static Response sendGetRequestAttempt(Request request, int[] allowedCodes, AtomicReference<Call> activeCall) throws IOException {
+        val host = request.url().host();
+        val egress = selectEgress();
+        Response response;
+        egress.begin();
+        try {
+            val call = getHostClient(egress, host).newCall(request);
+            activeCall.set(call);
+            response = call.execute();
+        } catch (IOException ex) {
+            egress.end(false, false, CrawlerApi.Settings.getWebEgressMaxFailures(), CrawlerApi.Settings.getWebEgressEjectionMs());
+            if (CrawlerApi.Settings.isWebHttp2Enabled() && isHttp2Failure(ex)) {
+                fallBackToHttp1(host);
+            }
+            throw ex;
+        }
         val code = response.code();
+        egress.end(code < 500, code == 429 || code == 403, CrawlerApi.Settings.getWebEgressMaxFailures(), CrawlerApi.Settings.getWebEgressEjectionMs());
         var valid = false;
         for (val allowedCode : allowedCodes) {
             if (allowedCode == code) {
@@ -85,10 +552,93 @@ public class WebHelper {
             }
         }
         if (!valid) {
+            val retryAfterMs = parseRetryAfterMs(response.header("Retry-After"));
             response.close();
-            throw new IOException("Invalid response code (" + code + ")");
+            throw new ResponseCodeException(code, retryAfterMs);
         }
         return response;
     }
 
+    private static class BoundSocketFactory extends SocketFactory {
+
+        private final InetAddress localAddress;
+
+        private BoundSocketFactory(InetAddress localAddress) {
+            this.localAddress = localAddress;
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            val socket = new Socket();
+            socket.bind(new InetSocketAddress(this.localAddress, 0));
+            return socket;
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return new Socket(host, port, this.localAddress, 0);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return new Socket(host, port, localHost, localPort);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return new Socket(host, port, this.localAddress, 0);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            return new Socket(address, port, localAddress, localPort);
+        }
+
+    }
+
+    private static class ResponseCodeException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int code;
+        private final long retryAfterMs;
+
+        private ResponseCodeException(int code, long retryAfterMs) {
+            super("Invalid response code (" + code + ")");
+            this.code = code;
+            this.retryAfterMs = retryAfterMs;
+        }
+
+        private long getRetryAfterMs() {
+            return this.retryAfterMs;
+        }
+
+        private boolean isOverloaded() {
+            return this.code == 429 || this.code >= 500;
+        }
+
+    }
+
+    private static class CountingSource extends ForwardingSource {
+
+        protected long bytes;
+        protected long nanos;
+
+        private CountingSource(Source delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            val start = System.nanoTime();
+            val read = super.read(sink, byteCount);
+            this.nanos += System.nanoTime() - start;
+            if (read > 0) {
+                this.bytes += read;
+            }
+            return read;
+        }
+
+    }
+
 }
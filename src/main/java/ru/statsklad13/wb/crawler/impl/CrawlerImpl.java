@@ -10,41 +10,66 @@ import ru.statsklad13.wb.crawler.api.data.key.merch.SizeKey;
 import ru.statsklad13.wb.crawler.api.data.key.merch.WarehouseKey;
 import ru.statsklad13.wb.crawler.api.data.key.product.ProductKey;
 import ru.statsklad13.wb.crawler.api.data.key.source.CatalogKey;
+import ru.statsklad13.wb.crawler.api.data.key.source.SourceKey;
 import ru.statsklad13.wb.crawler.api.data.merch.Warehouse;
+import ru.statsklad13.wb.crawler.api.data.misc.PrioritizedTask;
 import ru.statsklad13.wb.crawler.api.data.product.Seller;
 import ru.statsklad13.wb.crawler.api.data.source.Catalog;
 import ru.statsklad13.wb.crawler.api.data.source.Category;
+import ru.statsklad13.wb.crawler.api.data.source.Query;
 import ru.statsklad13.wb.crawler.api.data.source.Source;
 import ru.statsklad13.wb.crawler.api.helpers.CrawlHelper;
 import ru.statsklad13.wb.crawler.api.helpers.DbHelper;
 import ru.statsklad13.wb.crawler.api.helpers.WebHelper;
 import ru.statsklad13.wb.crawler.impl.data.merch.Order;
 import ru.statsklad13.wb.crawler.impl.data.merch.Refill;
+import ru.statsklad13.wb.crawler.impl.data.misc.DiscoveredCategory;
+import ru.statsklad13.wb.crawler.impl.data.misc.DiscoveredSource;
+import ru.statsklad13.wb.crawler.impl.data.misc.ImportTiming;
+import ru.statsklad13.wb.crawler.impl.data.misc.IterationDeadline;
+import ru.statsklad13.wb.crawler.impl.data.misc.LongLongMap;
 import ru.statsklad13.wb.crawler.impl.data.misc.OutputTask;
+import ru.statsklad13.wb.crawler.impl.data.misc.RevisitTable;
+import ru.statsklad13.wb.crawler.impl.data.misc.StockCheckpoint;
 import ru.statsklad13.wb.crawler.impl.data.result.CollectedCatalogPage;
 import ru.statsklad13.wb.crawler.impl.data.result.CollectedCategory;
+import ru.statsklad13.wb.crawler.impl.helpers.ArchiveHelper;
 import ru.statsklad13.wb.crawler.impl.helpers.CacheHelper;
 import ru.statsklad13.wb.crawler.impl.helpers.DateHelper;
+import ru.statsklad13.wb.crawler.impl.helpers.IdHelper;
 import ru.statsklad13.wb.crawler.impl.helpers.OutputHelper;
+import ru.statsklad13.wb.crawler.impl.helpers.ScanHelper;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
 @Log4j2
 public class CrawlerImpl {
@@ -57,6 +82,7 @@ public class CrawlerImpl {
 
         CATALOGS(
                 TableType.DICTIONARY,
+                List.of(),
                 Paths.get(Constants.OUTPUT_DIR_NAME, "catalogs.txt"),
                 "catalogs",
                 "timestamp TIMESTAMPTZ, " +
@@ -71,11 +97,15 @@ public class CrawlerImpl {
                 "INSERT INTO %table% (last_timestamp, shard, query) " +
                         "SELECT DISTINCT ON (shard, query) * FROM %table%_tmp " +
                         "ON CONFLICT (shard, query) DO UPDATE SET " +
-                        "last_timestamp = EXCLUDED.last_timestamp;",
+                        "last_timestamp = EXCLUDED.last_timestamp " +
+                        "RETURNING shard, query, id;",
+                null,
+                null,
                 "last_timestamp"
         ),
         CATEGORIES(
                 TableType.DICTIONARY,
+                List.of(CATALOGS),
                 Paths.get(Constants.OUTPUT_DIR_NAME, "categories.txt"),
                 "categories",
                 "timestamp TIMESTAMPTZ, " +
@@ -94,11 +124,14 @@ public class CrawlerImpl {
                         "ON CONFLICT (text) DO UPDATE SET " +
                         "last_timestamp = EXCLUDED.last_timestamp, " +
                         "catalog_id = EXCLUDED.catalog_id;",
+                null,
+                null,
                 "last_timestamp",
                 "catalog_id"
         ),
         QUERIES(
                 TableType.DICTIONARY,
+                List.of(CATALOGS),
                 Paths.get(Constants.OUTPUT_DIR_NAME, "queries.txt"),
                 "queries",
                 "timestamp TIMESTAMPTZ, " +
@@ -117,11 +150,14 @@ public class CrawlerImpl {
                         "ON CONFLICT (text) DO UPDATE SET " +
                         "last_timestamp = EXCLUDED.last_timestamp, " +
                         "catalog_id = EXCLUDED.catalog_id;",
+                null,
+                null,
                 "last_timestamp",
                 "catalog_id"
         ),
         BRANDS(
                 TableType.DICTIONARY,
+                List.of(),
                 Paths.get(Constants.OUTPUT_DIR_NAME, "brands.txt"),
                 "brands",
                 "timestamp TIMESTAMPTZ, " +
@@ -141,11 +177,14 @@ public class CrawlerImpl {
                         "last_timestamp = EXCLUDED.last_timestamp, " +
                         "name = EXCLUDED.name, " +
                         "image_url = EXCLUDED.image_url;",
+                null,
+                null,
                 "last_timestamp",
                 "name"
         ),
         SELLERS(
                 TableType.DICTIONARY,
+                List.of(),
                 Paths.get(Constants.OUTPUT_DIR_NAME, "sellers.txt"),
                 "sellers",
                 "timestamp TIMESTAMPTZ, " +
@@ -177,11 +216,14 @@ public class CrawlerImpl {
                         "ogrn = EXCLUDED.ogrn, " +
                         "ogrnip = EXCLUDED.ogrnip, " +
                         "address = EXCLUDED.address;",
+                null,
+                null,
                 "last_timestamp",
                 "name"
         ),
         PRODUCTS(
                 TableType.DICTIONARY,
+                List.of(BRANDS, SELLERS),
                 Paths.get(Constants.OUTPUT_DIR_NAME, "products.txt"),
                 "products",
                 "timestamp TIMESTAMPTZ, " +
@@ -208,13 +250,17 @@ public class CrawlerImpl {
                         "name = EXCLUDED.name, " +
                         "image_url = EXCLUDED.image_url, " +
                         "brand_id = EXCLUDED.brand_id, " +
-                        "seller_id = EXCLUDED.seller_id;",
+                        "seller_id = EXCLUDED.seller_id " +
+                        "RETURNING sku, id;",
+                null,
+                null,
                 "last_timestamp",
                 "brand_id",
                 "seller_id"
         ),
         PRODUCT_DETAILS(
                 TableType.HISTORY,
+                List.of(PRODUCTS),
                 Paths.get(Constants.OUTPUT_DIR_NAME, "product_details.txt"),
                 "product_details",
                 "timestamp TIMESTAMPTZ, " +
@@ -240,10 +286,24 @@ public class CrawlerImpl {
                         "sale_price = EXCLUDED.sale_price, " +
                         "feedbacks = EXCLUDED.feedbacks, " +
                         "rating = EXCLUDED.rating;",
+                "timestamp TIMESTAMPTZ, " +
+                        "product_id BIGINT, " +
+                        "price INTEGER, " +
+                        "sale_price INTEGER, " +
+                        "feedbacks INTEGER, " +
+                        "rating SMALLINT",
+                "INSERT INTO %table% (timestamp, product_id, price, sale_price, feedbacks, rating) " +
+                        "SELECT DISTINCT ON (product_id, timestamp) * FROM %table%_tmp " +
+                        "ON CONFLICT (product_id, timestamp) DO UPDATE SET " +
+                        "price = EXCLUDED.price, " +
+                        "sale_price = EXCLUDED.sale_price, " +
+                        "feedbacks = EXCLUDED.feedbacks, " +
+                        "rating = EXCLUDED.rating;",
                 "timestamp"
         ),
         POSITIONS(
                 TableType.HISTORY,
+                List.of(PRODUCTS, CATALOGS),
                 Paths.get(Constants.OUTPUT_DIR_NAME, "positions.txt"),
                 "positions",
                 "timestamp TIMESTAMPTZ, " +
@@ -264,11 +324,20 @@ public class CrawlerImpl {
                         "LEFT JOIN catalogs ON catalogs.shard = catalog_shard AND catalogs.query = catalog_query " +
                         "ON CONFLICT (product_id, catalog_id, timestamp) DO UPDATE SET " +
                         "place = EXCLUDED.place;",
+                "timestamp TIMESTAMPTZ, " +
+                        "product_id BIGINT, " +
+                        "catalog_id BIGINT, " +
+                        "place SMALLINT",
+                "INSERT INTO %table% (timestamp, product_id, catalog_id, place) " +
+                        "SELECT DISTINCT ON (product_id, catalog_id, timestamp) * FROM %table%_tmp " +
+                        "ON CONFLICT (product_id, catalog_id, timestamp) DO UPDATE SET " +
+                        "place = EXCLUDED.place;",
                 "timestamp",
                 "catalog_id"
         ),
         SIZES(
                 TableType.DICTIONARY,
+                List.of(PRODUCTS),
                 Paths.get(Constants.OUTPUT_DIR_NAME, "sizes.txt"),
                 "sizes",
                 "timestamp TIMESTAMPTZ, " +
@@ -287,11 +356,15 @@ public class CrawlerImpl {
                         "LEFT JOIN products ON products.sku = product_sku " +
                         "ON CONFLICT (product_id, name) DO UPDATE SET " +
                         "last_timestamp = EXCLUDED.last_timestamp, " +
-                        "alt_name = EXCLUDED.alt_name;",
+                        "alt_name = EXCLUDED.alt_name " +
+                        "RETURNING product_id, name, id;",
+                null,
+                null,
                 "last_timestamp"
         ),
         WAREHOUSES(
                 TableType.DICTIONARY,
+                List.of(),
                 Paths.get(Constants.OUTPUT_DIR_NAME, "warehouses.txt"),
                 "warehouses",
                 "timestamp TIMESTAMPTZ, " +
@@ -308,11 +381,15 @@ public class CrawlerImpl {
                         "ORDER BY wb_id, name " +
                         "ON CONFLICT (wb_id) DO UPDATE SET " +
                         "last_timestamp = EXCLUDED.last_timestamp, " +
-                        "name = EXCLUDED.name;",
+                        "name = EXCLUDED.name " +
+                        "RETURNING wb_id, id;",
+                null,
+                null,
                 "last_timestamp"
         ),
         STOCKS(
                 TableType.HISTORY,
+                List.of(PRODUCTS, SIZES, WAREHOUSES),
                 Paths.get(Constants.OUTPUT_DIR_NAME, "stocks.txt"),
                 "stocks",
                 "timestamp TIMESTAMPTZ, " +
@@ -334,11 +411,20 @@ public class CrawlerImpl {
                         "LEFT JOIN warehouses ON warehouses.wb_id = warehouse_wb_id " +
                         "ON CONFLICT (size_id, warehouse_id, timestamp) DO UPDATE SET " +
                         "quantity = EXCLUDED.quantity;",
+                "timestamp TIMESTAMPTZ, " +
+                        "size_id BIGINT, " +
+                        "warehouse_id BIGINT, " +
+                        "quantity INTEGER",
+                "INSERT INTO %table% (timestamp, size_id, warehouse_id, quantity) " +
+                        "SELECT DISTINCT ON (size_id, warehouse_id, timestamp) * FROM %table%_tmp " +
+                        "ON CONFLICT (size_id, warehouse_id, timestamp) DO UPDATE SET " +
+                        "quantity = EXCLUDED.quantity;",
                 "timestamp",
                 "warehouse_id"
         ),
         ORDERS(
                 TableType.HISTORY,
+                List.of(PRODUCTS, SIZES, WAREHOUSES),
                 Paths.get(Constants.OUTPUT_DIR_NAME, "orders.txt"),
                 "orders",
                 "timestamp TIMESTAMPTZ, " +
@@ -363,11 +449,22 @@ public class CrawlerImpl {
                         "ON CONFLICT (size_id, warehouse_id, timestamp) DO UPDATE SET " +
                         "timestamp_to = EXCLUDED.timestamp_to, " +
                         "quantity = EXCLUDED.quantity;",
+                "timestamp TIMESTAMPTZ, " +
+                        "timestamp_to TIMESTAMPTZ, " +
+                        "size_id BIGINT, " +
+                        "warehouse_id BIGINT, " +
+                        "quantity INTEGER",
+                "INSERT INTO %table% (timestamp, timestamp_to, size_id, warehouse_id, quantity) " +
+                        "SELECT DISTINCT ON (size_id, warehouse_id, timestamp) * FROM %table%_tmp " +
+                        "ON CONFLICT (size_id, warehouse_id, timestamp) DO UPDATE SET " +
+                        "timestamp_to = EXCLUDED.timestamp_to, " +
+                        "quantity = EXCLUDED.quantity;",
                 "timestamp",
                 "warehouse_id"
         ),
         REFILLS(
                 TableType.HISTORY,
+                List.of(PRODUCTS, SIZES, WAREHOUSES),
                 Paths.get(Constants.OUTPUT_DIR_NAME, "refills.txt"),
                 "refills",
                 "timestamp TIMESTAMPTZ, " +
@@ -392,25 +489,41 @@ public class CrawlerImpl {
                         "ON CONFLICT (size_id, warehouse_id, timestamp) DO UPDATE SET " +
                         "timestamp_to = EXCLUDED.timestamp_to, " +
                         "quantity = EXCLUDED.quantity;",
+                "timestamp TIMESTAMPTZ, " +
+                        "timestamp_to TIMESTAMPTZ, " +
+                        "size_id BIGINT, " +
+                        "warehouse_id BIGINT, " +
+                        "quantity INTEGER",
+                "INSERT INTO %table% (timestamp, timestamp_to, size_id, warehouse_id, quantity) " +
+                        "SELECT DISTINCT ON (size_id, warehouse_id, timestamp) * FROM %table%_tmp " +
+                        "ON CONFLICT (size_id, warehouse_id, timestamp) DO UPDATE SET " +
+                        "timestamp_to = EXCLUDED.timestamp_to, " +
+                        "quantity = EXCLUDED.quantity;",
                 "timestamp",
                 "warehouse_id"
         );
 
         @Getter private final Path outputPath;
         private final TableType type;
-        private final String tableName;
+        private final List<Table> dependencies;
+        @Getter private final String tableName;
         private final String tmpSchema;
         private final String finalSchema;
         private final String importSql;
+        private final String resolvedTmpSchema;
+        private final String resolvedImportSql;
         private final String[] indexColumns;
 
-        Table(TableType type, Path outputPath, String tableName, String tmpSchema, String finalSchema, String importSql, String... indexColumns) {
+        Table(TableType type, List<Table> dependencies, Path outputPath, String tableName, String tmpSchema, String finalSchema, String importSql, String resolvedTmpSchema, String resolvedImportSql, String... indexColumns) {
             this.type = type;
+            this.dependencies = dependencies;
             this.outputPath = outputPath;
             this.tableName = tableName;
             this.tmpSchema = tmpSchema;
             this.finalSchema = finalSchema;
             this.importSql = importSql;
+            this.resolvedTmpSchema = resolvedTmpSchema;
+            this.resolvedImportSql = resolvedImportSql;
             this.indexColumns = indexColumns;
         }
     }
@@ -420,11 +533,16 @@ public class CrawlerImpl {
         public static final String NULL_FIELD = "\\N";
         public static final String FIELD_SEPARATOR = "\t";
         public static final String OUTPUT_DIR_NAME = "output";
-        public static final int QUERY_BATCH_SIZE = 1000000;
+        public static final String ARCHIVE_DIR_NAME = "archive";
+        public static final String REVISIT_FILE_NAME = "revisits.bin";
+        public static final int SKU_SCAN_FETCH_SIZE = 10000;
+        public static final long STOCK_CHECKPOINT_INTERVAL_MS = 10000;
         public static final int DAY_HISTORY_LENGTH = 30;
 
     }
 
+    private static final AtomicInteger discoveryReused = new AtomicInteger();
+    private static final AtomicInteger discoveryCrawled = new AtomicInteger();
     private static ExecutorService outputExecutor;
 
     public static void main(String[] args) {
@@ -433,7 +551,19 @@ public class CrawlerImpl {
             WebHelper.init();
             DbHelper.init();
             CacheHelper.init();
-            outputExecutor = Executors.newSingleThreadExecutor(CrawlerApi.createFactory("WB CrawlerImpl Output Thread", false));
+            restoreBasketRoutes();
+            CrawlHelper.setSellerFingerprintStore(CacheHelper.openPermanentMap("seller_fingerprints"));
+            CrawlerApi.Settings.watch(changedKeys -> {
+                log.info("Reloaded settings, changed {}", changedKeys);
+                val restartKeys = changedKeys.stream().filter(key -> !CrawlerApi.Settings.isReloadable(key)).toList();
+                if (!restartKeys.isEmpty()) {
+                    log.warn("Settings {} take effect only after restart", restartKeys);
+                }
+            }, ex -> log.warn("Unable to reload settings, keeping previous values", ex));
+            outputExecutor = Executors.newSingleThreadExecutor(CrawlerApi.createTaskFactory("WB CrawlerImpl Output Thread", false));
+            log.info("Running in {} executor mode{}", CrawlerApi.Settings.getExecutorMode(),
+                    CrawlerApi.Settings.getExecutorMode() == CrawlerApi.ExecutorMode.VIRTUAL && !CrawlerApi.isVirtualThreadsEnabled() ?
+                            " (virtual threads unavailable on this JVM, falling back to platform threads)" : "");
             val taskExecutor = Executors.newSingleThreadScheduledExecutor(CrawlerApi.createFactory("WB CrawlerImpl Task Thread", false));
             val mainTask = new Runnable() {
                 @Override
@@ -450,6 +580,7 @@ public class CrawlerImpl {
                         }
                         val dayTimestamp = CacheHelper.<Timestamp>getPermanent("last_timestamp").get();
                         val taskTimestamp = CacheHelper.<Timestamp>getTemporary("task_timestamp").get();
+                        CrawlHelper.setResultScope(taskTimestamp.toString());
                         if (!CacheHelper.hasTemporary("fc_finish")) {
                             log.info("Full crawl not done, running it now");
                             if (!CacheHelper.hasTemporary("fc_warehouses_done")) {
@@ -493,50 +624,11 @@ public class CrawlerImpl {
                                 log.info("All tables and indices already created");
                             }
                             if (!CacheHelper.hasTemporary("fc_imports_done")) {
-                                val catalogsImport = importIntoDatabase(Table.CATALOGS, taskTimestamp, null);
-                                val categoriesImport = catalogsImport.thenComposeAsync(ignored -> {
-                                    return importIntoDatabase(Table.CATEGORIES, taskTimestamp, null);
-                                });
-                                val queriesImport = catalogsImport.thenComposeAsync(ignored -> {
-                                    return importIntoDatabase(Table.QUERIES, taskTimestamp, null);
-                                });
-                                val brandsImport = importIntoDatabase(Table.BRANDS, taskTimestamp, null);
-                                val sellersImport = importIntoDatabase(Table.SELLERS, taskTimestamp, null);
-                                val productsImport = brandsImport.thenComposeAsync(ignored -> {
-                                    return sellersImport.thenComposeAsync(ignored2 -> {
-                                        return importIntoDatabase(Table.PRODUCTS, taskTimestamp, null);
-                                    });
-                                });
-                                val productDetailsImport = productsImport.thenComposeAsync(ignored -> {
-                                    return importIntoDatabase(Table.PRODUCT_DETAILS, taskTimestamp, null);
-                                });
-                                val positionsImport = catalogsImport.thenComposeAsync(ignored -> {
-                                    return productsImport.thenComposeAsync(ignored2 -> {
-                                        return importIntoDatabase(Table.POSITIONS, taskTimestamp, null);
-                                    });
-                                });
-                                val sizesImport = productsImport.thenComposeAsync(ignored -> {
-                                    return importIntoDatabase(Table.SIZES, taskTimestamp, null);
-                                });
-                                val warehousesImport = importIntoDatabase(Table.WAREHOUSES, taskTimestamp, null);
-                                val stocksImport = productsImport.thenComposeAsync(ignored -> {
-                                    return sizesImport.thenComposeAsync(ignored2 -> {
-                                        return warehousesImport.thenComposeAsync(ignored3 -> {
-                                            return importIntoDatabase(Table.STOCKS, taskTimestamp, null);
-                                        });
-                                    });
-                                });
-                                catalogsImport.join();
-                                categoriesImport.join();
-                                queriesImport.join();
-                                brandsImport.join();
-                                sellersImport.join();
-                                productsImport.join();
-                                productDetailsImport.join();
-                                positionsImport.join();
-                                sizesImport.join();
-                                warehousesImport.join();
-                                stocksImport.join();
+                                importTables(taskTimestamp, null, false,
+                                        Table.CATALOGS, Table.CATEGORIES, Table.QUERIES,
+                                        Table.BRANDS, Table.SELLERS, Table.PRODUCTS,
+                                        Table.PRODUCT_DETAILS, Table.POSITIONS,
+                                        Table.SIZES, Table.WAREHOUSES, Table.STOCKS);
                                 CacheHelper.writeTemporary("fc_imports_done");
                             } else {
                                 log.info("Everything already imported into database");
@@ -583,51 +675,26 @@ public class CrawlerImpl {
                                         }, "SELECT timestamp FROM stocks WHERE timestamp >= ? ORDER BY timestamp ASC LIMIT 1;", secondLastDayStartTimestamp).join();
                                         log.info("First timestamp found: {}", secondLastFirstTimestamp.get().toString());
                                         val partName = "_" + secondLastDayStartTimestamp.toString().split(" ")[0].replace("-", "");
-                                        if (!CacheHelper.hasTemporary("fc_minify_stocks")) {
-                                            DbHelper.executeUpdate("DROP TABLE IF EXISTS stocks_new;").join();
-                                            DbHelper.executeUpdate("CREATE TABLE stocks_new (LIKE stocks INCLUDING ALL);").join();
-                                            DbHelper.executeUpdate("INSERT INTO stocks_new (timestamp, size_id, warehouse_id, quantity) " +
-                                                            "SELECT timestamp, size_id, warehouse_id, quantity FROM stocks WHERE timestamp = ?;",
-                                                    secondLastFirstTimestamp.get()).join();
-                                            DbHelper.executeUpdate("BEGIN; " +
-                                                    "ALTER TABLE stocks" + partName + " RENAME TO stocks_old; " +
-                                                    "ALTER TABLE stocks_new RENAME TO stocks" + partName + "; " +
-                                                    "DROP TABLE stocks_old; " +
-                                                    "ALTER TABLE stocks ATTACH PARTITION stocks" + partName + " FOR VALUES FROM ('" + secondLastDayStartTimestamp + "') TO ('" + secondLastNextDayTimestamp + "'); " +
-                                                    "COMMIT;").join();
-                                            log.info("Minified last day stocks successfully");
-                                            CacheHelper.writeTemporary("fc_minify_stocks");
+                                        val minified = new AtomicInteger();
+                                        val stocksMinify = minifyPartition(Table.STOCKS, partName, secondLastDayStartTimestamp, secondLastNextDayTimestamp, minified,
+                                                "INSERT INTO stocks_new (timestamp, size_id, warehouse_id, quantity) " +
+                                                        "SELECT timestamp, size_id, warehouse_id, quantity FROM stocks WHERE timestamp = ?;",
+                                                secondLastFirstTimestamp.get());
+                                        if (!CrawlerApi.Settings.isMinifyOnline()) {
+                                            stocksMinify.join();
                                         }
-                                        if (!CacheHelper.hasTemporary("fc_minify_orders")) {
-                                            DbHelper.executeUpdate("DROP TABLE IF EXISTS orders_new;").join();
-                                            DbHelper.executeUpdate("CREATE TABLE orders_new (LIKE orders INCLUDING ALL);").join();
-                                            DbHelper.executeUpdate("INSERT INTO orders_new (timestamp, timestamp_to, size_id, warehouse_id, quantity) " +
-                                                            "SELECT MIN(timestamp), MAX(timestamp_to), size_id, warehouse_id, SUM(quantity) FROM orders WHERE timestamp >= ? AND timestamp < ? GROUP BY size_id, warehouse_id;",
-                                                    secondLastFirstTimestamp.get(), secondLastNextDayTimestamp).join();
-                                            DbHelper.executeUpdate("BEGIN; " +
-                                                    "ALTER TABLE orders" + partName + " RENAME TO orders_old; " +
-                                                    "ALTER TABLE orders_new RENAME TO orders" + partName + "; " +
-                                                    "DROP TABLE orders_old; " +
-                                                    "ALTER TABLE orders ATTACH PARTITION orders" + partName + " FOR VALUES FROM ('" + secondLastDayStartTimestamp + "') TO ('" + secondLastNextDayTimestamp + "'); " +
-                                                    "COMMIT;").join();
-                                            log.info("Minified last day orders successfully");
-                                            CacheHelper.writeTemporary("fc_minify_orders");
-                                        }
-                                        if (!CacheHelper.hasTemporary("fc_minify_refills")) {
-                                            DbHelper.executeUpdate("DROP TABLE IF EXISTS refills_new;").join();
-                                            DbHelper.executeUpdate("CREATE TABLE refills_new (LIKE refills INCLUDING ALL);").join();
-                                            DbHelper.executeUpdate("INSERT INTO refills_new (timestamp, timestamp_to, size_id, warehouse_id, quantity) " +
-                                                            "SELECT MIN(timestamp), MAX(timestamp_to), size_id, warehouse_id, SUM(quantity) FROM refills WHERE timestamp >= ? AND timestamp < ? GROUP BY size_id, warehouse_id;",
-                                                    secondLastFirstTimestamp.get(), secondLastNextDayTimestamp).join();
-                                            DbHelper.executeUpdate("BEGIN; " +
-                                                    "ALTER TABLE refills" + partName + " RENAME TO refills_old; " +
-                                                    "ALTER TABLE refills_new RENAME TO refills" + partName + "; " +
-                                                    "DROP TABLE refills_old; " +
-                                                    "ALTER TABLE refills ATTACH PARTITION refills" + partName + " FOR VALUES FROM ('" + secondLastDayStartTimestamp + "') TO ('" + secondLastNextDayTimestamp + "'); " +
-                                                    "COMMIT;").join();
-                                            log.info("Minified last day refills successfully");
-                                            CacheHelper.writeTemporary("fc_minify_refills");
+                                        val ordersMinify = minifyPartition(Table.ORDERS, partName, secondLastDayStartTimestamp, secondLastNextDayTimestamp, minified,
+                                                "INSERT INTO orders_new (timestamp, timestamp_to, size_id, warehouse_id, quantity) " +
+                                                        "SELECT MIN(timestamp), MAX(timestamp_to), size_id, warehouse_id, SUM(quantity) FROM orders WHERE timestamp >= ? AND timestamp < ? GROUP BY size_id, warehouse_id;",
+                                                secondLastFirstTimestamp.get(), secondLastNextDayTimestamp);
+                                        if (!CrawlerApi.Settings.isMinifyOnline()) {
+                                            ordersMinify.join();
                                         }
+                                        val refillsMinify = minifyPartition(Table.REFILLS, partName, secondLastDayStartTimestamp, secondLastNextDayTimestamp, minified,
+                                                "INSERT INTO refills_new (timestamp, timestamp_to, size_id, warehouse_id, quantity) " +
+                                                        "SELECT MIN(timestamp), MAX(timestamp_to), size_id, warehouse_id, SUM(quantity) FROM refills WHERE timestamp >= ? AND timestamp < ? GROUP BY size_id, warehouse_id;",
+                                                secondLastFirstTimestamp.get(), secondLastNextDayTimestamp);
+                                        CompletableFuture.allOf(stocksMinify, ordersMinify, refillsMinify).join();
                                     } else {
                                         log.info("No second last timestamp found, no minifiying needed");
                                     }
@@ -635,6 +702,16 @@ public class CrawlerImpl {
                                 } else {
                                     log.info("Last timestamp stocks/orders/refills already minified");
                                 }
+                                if (!CacheHelper.hasTemporary("fc_archive_done")) {
+                                    if (CrawlerApi.Settings.isArchiveEnabled()) {
+                                        archiveColdPartitions(dayTimestamp);
+                                    } else {
+                                        log.info("Archival disabled, keeping all partitions in database");
+                                    }
+                                    CacheHelper.writeTemporary("fc_archive_done");
+                                } else {
+                                    log.info("Cold partitions already archived");
+                                }
                                 if (!CacheHelper.hasTemporary("fc_cleanup_done")) {
                                     val edgeTimestamp = new Timestamp(DateHelper.dayStartCalendar(dayTimestamp.getTime(), -Constants.DAY_HISTORY_LENGTH).getTimeInMillis());
                                     val futures = new ArrayList<CompletableFuture<Void>>();
@@ -659,7 +736,9 @@ public class CrawlerImpl {
                                     }
                                     CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
                                     DbHelper.executeUpdate("DELETE FROM partitions WHERE timestamp < ?;", edgeTimestamp).join();
-                                    log.info("Cleaned up old entries and partitions");
+                                    val archivesDeleted = ArchiveHelper.deleteArchivesBefore(edgeTimestamp);
+                                    IdHelper.invalidate();
+                                    log.info("Cleaned up old entries, partitions and {} archives", archivesDeleted);
                                     CacheHelper.writeTemporary("fc_cleanup_done");
                                 } else {
                                     log.info("Cleanup of old entries already done");
@@ -679,58 +758,9 @@ public class CrawlerImpl {
                                 } else {
                                     log.info("All warehouses already done");
                                 }
-                                if (!CacheHelper.hasTemporary(taskTimestamp + "_sku_batches_done")) {
-                                    val skus = new HashSet<Integer>();
-                                    val count = new AtomicInteger();
-                                    val futures = new ArrayList<CompletableFuture<Void>>();
-                                    DbHelper.executeQuery(Constants.QUERY_BATCH_SIZE, result -> {
-                                        try {
-                                            int sku = result.getInt("sku");
-                                            skus.add(sku);
-                                            if (count.incrementAndGet() == CrawlerApi.Constants.PRODUCTS_PER_PAGE) {
-                                                log.info("Scheduling batch because it reached the limit");
-                                                futures.add(CrawlHelper.crawlStocksBySku(skus)
-                                                        .thenComposeAsync(crawled -> {
-                                                            return storeOutput(OutputHelper.crawledStocksToOutput(crawled, taskTimestamp));
-                                                        }));
-                                                skus.clear();
-                                                count.set(0);
-                                            }
-                                            if (futures.size() * CrawlerApi.Constants.PRODUCTS_PER_PAGE >= Constants.QUERY_BATCH_SIZE) {
-                                                log.info("Await batch executions before continuing");
-                                                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-                                                futures.clear();
-                                            }
-                                        } catch (Exception ex) {
-                                            handleEx("Fatal exception while processing iteration query result", ex);
-                                        }
-                                    }, "SELECT sku FROM products WHERE last_timestamp >= ? ORDER BY id ASC;", dayTimestamp).join();
-                                    if (!skus.isEmpty()) {
-                                        log.info("Scheduling leftovers from last batch");
-                                        futures.add(CrawlHelper.crawlStocksBySku(skus)
-                                                .thenComposeAsync(crawled -> {
-                                                    return storeOutput(OutputHelper.crawledStocksToOutput(crawled, taskTimestamp));
-                                                }));
-                                    }
-                                    if (!futures.isEmpty()) {
-                                        log.info("Await leftover executions before finishing");
-                                        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-                                    }
-                                    CacheHelper.writeTemporary(taskTimestamp + "_sku_batches_done");
-                                } else {
-                                    log.info("All sku batches already done");
-                                }
+                                processSkuSlices(taskTimestamp, dayTimestamp);
                                 if (!CacheHelper.hasTemporary(taskTimestamp + "_imports_done")) {
-                                    val sizesImport = importIntoDatabase(Table.SIZES, taskTimestamp, null);
-                                    val warehousesImport = importIntoDatabase(Table.WAREHOUSES, taskTimestamp, null);
-                                    val stocksImport = sizesImport.thenComposeAsync(ignored -> {
-                                        return warehousesImport.thenComposeAsync(ignored2 -> {
-                                            return importIntoDatabase(Table.STOCKS, taskTimestamp, null);
-                                        });
-                                    });
-                                    sizesImport.join();
-                                    warehousesImport.join();
-                                    stocksImport.join();
+                                    importTables(taskTimestamp, null, true, Table.SIZES, Table.WAREHOUSES, Table.STOCKS);
                                     CacheHelper.writeTemporary(taskTimestamp + "_imports_done");
                                 } else {
                                     log.info("Everything already imported into database");
@@ -767,9 +797,19 @@ public class CrawlerImpl {
                         }
                         OutputTask.channelCache.clear();
                         cleanupOutputDirectory();
+                        log.info("Pruned {} expired seller fingerprints, {} kept", CrawlHelper.pruneSellerFingerprints(), CrawlHelper.getSellerFingerprintCount());
+                        CacheHelper.writePermanent("basket_routes", CrawlerApi.getBasketRoutes().getUpperBounds());
                         val delay = DateHelper.nextPointCalendar().getTimeInMillis() - DateHelper.currentCalendar().getTimeInMillis() + 60000;
                         taskExecutor.schedule(this, delay, TimeUnit.MILLISECONDS);
                         log.info("Finished task, waiting until next point ({}ms left)", delay);
+                        log.info("Executor stats: {}", formatExecutorStats());
+                        log.info("Basket routes - {}", formatBasketStats());
+                        log.info("Connections - {}", formatConnectionStats());
+                        log.info("Egresses - {}", formatEgressStats());
+                        log.info("Hedging - {}", formatHedgeStats());
+                        log.info("Retries - {}, rejected by open circuits {}, circuits {}",
+                                WebHelper.getRetries(), WebHelper.getRejectedAttempts(), WebHelper.getCircuitStates());
+                        log.info("Transfer ({}) - {}", WebHelper.getAcceptEncoding(), formatTransferStats());
                     } catch (Exception ex) {
                         handleEx("Fatal exception in task thread", ex);
                     }
@@ -807,6 +847,19 @@ public class CrawlerImpl {
         }
     }
 
+    private static void restoreBasketRoutes() {
+        val seed = CacheHelper.<int[]>getPermanent("basket_routes_seed");
+        val learned = CacheHelper.<int[]>getPermanent("basket_routes");
+        if (seed.isPresent() && learned.isPresent() && Arrays.equals(seed.get(), CrawlerApi.Settings.getBasketBounds())) {
+            CrawlerApi.restoreBasketRoutes(learned.get());
+            log.info("Restored {} cached basket routes", learned.get().length + 1);
+        } else {
+            CacheHelper.writePermanent("basket_routes_seed", CrawlerApi.Settings.getBasketBounds());
+            CacheHelper.removePermanent("basket_routes");
+            log.info("Using {} configured basket routes", CrawlerApi.getBasketRoutes().getBasketCount());
+        }
+    }
+
     private static void cleanupOutputDirectory() throws IOException {
         @Cleanup val stream = Files.list(Paths.get(Constants.OUTPUT_DIR_NAME));
         for (val path : stream.toList()) {
@@ -817,17 +870,21 @@ public class CrawlerImpl {
 
     private static HashSet<Catalog> loadStoredCatalogs() throws IOException {
         val catalogs = new HashSet<Catalog>();
-        @Cleanup val reader = new BufferedReader(new FileReader(Table.CATALOGS.outputPath.toFile()));
-        String line;
-        while ((line = reader.readLine()) != null) {
-            val split = line.split(Constants.FIELD_SEPARATOR);
-            val shard = split[1];
-            val query = split[2];
-            val catalogKey = new CatalogKey(shard, query);
-            val catalog = new Catalog(catalogKey);
-            catalogs.add(catalog);
-        }
-        log.info("Loaded previously stored catalogs");
+        val seen = new HashMap<Long, byte[]>();
+        val collisions = new AtomicInteger();
+        ScanHelper.scanLines(Table.CATALOGS.outputPath, line -> {
+            val hash = line.hashFields(1, 2);
+            val stored = seen.get(hash);
+            if (stored == null) {
+                seen.put(hash, line.getFieldBytes(1, 2));
+            } else if (line.fieldsEqual(1, 2, stored)) {
+                return;
+            } else {
+                collisions.incrementAndGet();
+            }
+            catalogs.add(new Catalog(new CatalogKey(line.getField(1), line.getField(2))));
+        });
+        log.info("Loaded {} previously stored catalogs ({} hash collisions)", catalogs.size(), collisions.get());
         return catalogs;
     }
 
@@ -851,6 +908,8 @@ public class CrawlerImpl {
 
     private static void processCategories(Set<Category> categories, Timestamp taskTimestamp) {
         log.info("Processing categories, please wait...");
+        discoveryReused.set(0);
+        discoveryCrawled.set(0);
         val catsToProcess = new AtomicInteger();
         val catsProcessed = new AtomicInteger();
         val futures = new ArrayList<CompletableFuture<Void>>();
@@ -860,7 +919,7 @@ public class CrawlerImpl {
                     category.getKey().getText();
             if (!CacheHelper.hasTemporary(cache)) {
                 catsToProcess.incrementAndGet();
-                futures.add(collectCategory(category)
+                futures.add(collectCategory(category, taskTimestamp)
                         .thenComposeAsync(collected -> {
                             return storeOutput(OutputHelper.collectedCategoryToOutput(collected, taskTimestamp));
                         })
@@ -878,16 +937,27 @@ public class CrawlerImpl {
             }
         }
         CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-        log.info("Done processing categories");
+        log.info("Done processing categories ({} sources reused, {} crawled)", discoveryReused.get(), discoveryCrawled.get());
+        log.info("Request dedup - {}", formatDedupStats());
     }
 
     private static void processCatalogs(Set<Catalog> catalogs, Timestamp taskTimestamp) {
         log.info("Processing catalogs, please wait...");
+        for (val catalog : catalogs) {
+            CacheHelper.<Integer>getTemporary(createLastPageCache(catalog, taskTimestamp)).ifPresent(lastPage -> {
+                catalog.getLastPage().set(lastPage);
+            });
+        }
         for (var page = 1; page <= CrawlerApi.Constants.PAGES_PER_CATALOG; page++) {
             val pagesToProcess = new AtomicInteger();
             val pagesProcessed = new AtomicInteger();
+            val pagesSkipped = new AtomicInteger();
             val futures = new ArrayList<CompletableFuture<Void>>();
             for (val catalog : catalogs) {
+                if (page > catalog.getLastPage().get()) {
+                    pagesSkipped.incrementAndGet();
+                    continue;
+                }
                 val cache = taskTimestamp.toString() +
                         "_proc_catalog_" +
                         catalog.getKey().getShard() +
@@ -903,6 +973,11 @@ public class CrawlerImpl {
                                 return storeOutput(OutputHelper.collectedCatalogPageToOutput(collected, taskTimestamp));
                             })
                             .thenAcceptAsync(ignored -> {
+                                val lastPage = catalog.getLastPage().get();
+                                val lastPageCache = createLastPageCache(catalog, taskTimestamp);
+                                if (lastPage != Integer.MAX_VALUE && !CacheHelper.hasTemporary(lastPageCache)) {
+                                    CacheHelper.writeTemporary(lastPageCache, lastPage);
+                                }
                                 CacheHelper.writeTemporary(cache);
                                 pagesProcessed.incrementAndGet();
                                 if (pagesProcessed.get() % 10 == 0 || pagesProcessed.get() == pagesToProcess.get()) {
@@ -918,41 +993,483 @@ public class CrawlerImpl {
                 }
             }
             CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            if (pagesSkipped.get() > 0) {
+                log.info("Catalog page {} / {}: skipped {} exhausted catalogs",
+                        page,
+                        CrawlerApi.Constants.PAGES_PER_CATALOG,
+                        pagesSkipped.get());
+            }
         }
         log.info("Done processing catalogs");
+        log.info("Request dedup - {}", formatDedupStats());
+    }
+
+    private static String createLastPageCache(Catalog catalog, Timestamp taskTimestamp) {
+        return taskTimestamp.toString() +
+                "_last_page_catalog_" +
+                catalog.getKey().getShard() +
+                "_" +
+                catalog.getKey().getQuery();
+    }
+
+    private static CompletableFuture<Void> minifyPartition(Table table, String partSuffix, Timestamp lowTs, Timestamp highTs, AtomicInteger minified, String insertSql, Object... args) {
+        val cache = "fc_minify_" + table.tableName;
+        if (CacheHelper.hasTemporary(cache)) {
+            log.info("Last day {} already minified ({}/3 tables done)", table.tableName, minified.incrementAndGet());
+            return CompletableFuture.completedFuture(null);
+        }
+        val partName = table.tableName + partSuffix;
+        val newName = table.tableName + "_new";
+        val oldName = table.tableName + "_old";
+        val startMs = System.currentTimeMillis();
+        CompletableFuture<Void> future;
+        if (!CrawlerApi.Settings.isMinifyOnline()) {
+            future = DbHelper.executeUpdate("DROP TABLE IF EXISTS " + newName + ";")
+                    .thenComposeAsync(ignored -> DbHelper.executeUpdate("CREATE TABLE " + newName + " (LIKE " + table.tableName + " INCLUDING ALL);"))
+                    .thenComposeAsync(ignored -> DbHelper.executeUpdate(insertSql, args))
+                    .thenComposeAsync(ignored -> DbHelper.executeUpdate("BEGIN; " +
+                            "ALTER TABLE " + partName + " RENAME TO " + oldName + "; " +
+                            "ALTER TABLE " + newName + " RENAME TO " + partName + "; " +
+                            "DROP TABLE " + oldName + "; " +
+                            "ALTER TABLE " + table.tableName + " ATTACH PARTITION " + partName + " FOR VALUES FROM ('" + lowTs + "') TO ('" + highTs + "'); " +
+                            "COMMIT;"));
+        } else {
+            val builtCache = cache + "_built";
+            val constraintName = newName + "_bounds";
+            future = CompletableFuture.completedFuture(null);
+            if (!CacheHelper.hasTemporary(builtCache)) {
+                future = future.thenComposeAsync(ignored -> DbHelper.executeUpdate("DROP TABLE IF EXISTS " + newName + ";"))
+                        .thenComposeAsync(ignored -> DbHelper.executeUpdate("CREATE TABLE " + newName + " (LIKE " + table.tableName + " INCLUDING DEFAULTS);"))
+                        .thenComposeAsync(ignored -> DbHelper.executeUpdate(insertSql, args))
+                        .thenComposeAsync(ignored -> DbHelper.executeUpdate("ALTER TABLE " + newName + " ADD CONSTRAINT " + constraintName + " CHECK (timestamp IS NOT NULL AND timestamp >= '" + lowTs + "' AND timestamp < '" + highTs + "');"))
+                        .thenComposeAsync(ignored -> createPartitionIndexes(table, newName))
+                        .thenAcceptAsync(ignored -> {
+                            CacheHelper.writeTemporary(builtCache);
+                            log.info("Built minified {} in {} ms, swapping it in", partName, System.currentTimeMillis() - startMs);
+                        });
+            }
+            val built = new AtomicBoolean();
+            val attached = new AtomicBoolean();
+            val pending = new AtomicBoolean();
+            future = future.thenComposeAsync(ignored -> DbHelper.executeQuery(result -> {
+                        try {
+                            built.set(result.getBoolean("built"));
+                            attached.set(result.getBoolean("attached"));
+                            pending.set(result.getBoolean("pending"));
+                        } catch (Exception ex) {
+                            handleEx("Fatal exception while processing partition state query result", ex);
+                        }
+                    }, "SELECT to_regclass(?) IS NOT NULL AS built, " +
+                            "EXISTS (SELECT 1 FROM pg_inherits WHERE inhrelid = to_regclass(?)) AS attached, " +
+                            "EXISTS (SELECT 1 FROM pg_inherits WHERE inhrelid = to_regclass(?) AND inhdetachpending) AS pending;",
+                    newName, partName, partName))
+                    .thenComposeAsync(ignored -> {
+                        if (!built.get()) {
+                            log.info("Minified {} already swapped in", partName);
+                            return CompletableFuture.completedFuture(null);
+                        }
+                        CompletableFuture<Void> detach;
+                        if (pending.get()) {
+                            detach = DbHelper.executeUpdate("ALTER TABLE " + table.tableName + " DETACH PARTITION " + partName + " FINALIZE;");
+                        } else if (attached.get()) {
+                            detach = DbHelper.executeUpdate("ALTER TABLE " + table.tableName + " DETACH PARTITION " + partName + " CONCURRENTLY;");
+                        } else {
+                            detach = CompletableFuture.completedFuture(null);
+                        }
+                        return detach.thenComposeAsync(ignored2 -> {
+                            log.info("Detached {}, attaching minified replacement", partName);
+                            return DbHelper.executeTransaction(
+                                    "DROP TABLE IF EXISTS " + oldName + ";",
+                                    "ALTER TABLE IF EXISTS " + partName + " RENAME TO " + oldName + ";",
+                                    "ALTER TABLE " + newName + " RENAME TO " + partName + ";",
+                                    "ALTER TABLE " + table.tableName + " ATTACH PARTITION " + partName + " FOR VALUES FROM ('" + lowTs + "') TO ('" + highTs + "');",
+                                    "ALTER TABLE " + partName + " DROP CONSTRAINT " + constraintName + ";",
+                                    "DROP TABLE IF EXISTS " + oldName + ";");
+                        });
+                    });
+        }
+        return future.thenAcceptAsync(ignored -> {
+            CacheHelper.writeTemporary(cache);
+            log.info("Minified last day {} successfully in {} ms ({}/3 tables done)", table.tableName, System.currentTimeMillis() - startMs, minified.incrementAndGet());
+        });
+    }
+
+    private static CompletableFuture<Void> createPartitionIndexes(Table table, String relName) {
+        val sqls = new ArrayList<String>();
+        val constraints = Pattern.compile("(PRIMARY KEY|UNIQUE) \\([^)]*\\)").matcher(table.finalSchema);
+        while (constraints.find()) {
+            sqls.add("ALTER TABLE " + relName + " ADD " + constraints.group() + ";");
+        }
+        for (val column : table.indexColumns) {
+            sqls.add("CREATE INDEX ON " + relName + " (" + column + ");");
+        }
+        return DbHelper.executeTransaction(sqls.toArray(new String[0]));
+    }
+
+    private static void archiveColdPartitions(Timestamp dayTimestamp) throws IOException {
+        val hotEdgeTimestamp = new Timestamp(DateHelper.dayStartCalendar(dayTimestamp.getTime(), -CrawlerApi.Settings.getArchiveHotDays()).getTimeInMillis());
+        log.info("Archiving partitions older than {}", hotEdgeTimestamp);
+        val partitions = new LinkedHashMap<String, Table>();
+        DbHelper.executeQuery(result -> {
+            try {
+                val partName = result.getString("table_name");
+                for (val table : Table.values()) {
+                    if (ArchiveHelper.supports(table) && partName.startsWith(table.tableName + "_")) {
+                        partitions.put(partName, table);
+                    }
+                }
+            } catch (Exception ex) {
+                handleEx("Fatal exception while processing cold partitions query result", ex);
+            }
+        }, "SELECT table_name FROM partitions WHERE timestamp < ? ORDER BY timestamp ASC;", hotEdgeTimestamp).join();
+        var archivedRows = 0L;
+        for (val entry : partitions.entrySet()) {
+            val partName = entry.getKey();
+            archivedRows += ArchiveHelper.archivePartition(entry.getValue(), partName);
+            DbHelper.executeTransaction(
+                    "DROP TABLE IF EXISTS " + partName + ";",
+                    "DELETE FROM partitions WHERE table_name = '" + partName + "';").join();
+        }
+        log.info("Archived {} cold partitions ({} rows)", partitions.size(), archivedRows);
+    }
+
+    private static void processSkuSlices(Timestamp taskTimestamp, Timestamp dayTimestamp) throws IOException {
+        val slicesCache = taskTimestamp + "_sku_slices";
+        val totalCache = taskTimestamp + "_sku_total";
+        val hotCache = taskTimestamp + "_hot_skus";
+        val checkpointCache = taskTimestamp + "_stock_checkpoint";
+        var bounds = CacheHelper.<long[]>getTemporary(slicesCache).orElse(null);
+        if (bounds == null) {
+            val minId = new AtomicLong();
+            val maxId = new AtomicLong(-1);
+            val total = new AtomicLong();
+            DbHelper.executeQuery(result -> {
+                try {
+                    if (result.getObject("min_id") != null) {
+                        minId.set(result.getLong("min_id"));
+                        maxId.set(result.getLong("max_id"));
+                        total.set(result.getLong("total"));
+                    }
+                } catch (Exception ex) {
+                    handleEx("Fatal exception while processing product id range query result", ex);
+                }
+            }, "SELECT MIN(id) AS min_id, MAX(id) AS max_id, COUNT(*) AS total FROM products WHERE last_timestamp >= ?;", dayTimestamp).join();
+            val span = maxId.get() - minId.get() + 1;
+            val sliceCount = (int) Math.max(1, Math.min(CrawlerApi.Settings.getIterationSlices(), span));
+            bounds = new long[sliceCount + 1];
+            for (var i = 0; i <= sliceCount; i++) {
+                bounds[i] = minId.get() + span * i / sliceCount;
+            }
+            CacheHelper.writeTemporary(totalCache, total.get());
+            CacheHelper.writeTemporary(slicesCache, bounds);
+            log.info("Planned {} sku slices over {} products with ids {}..{}", sliceCount, total.get(), minId.get(), maxId.get());
+        }
+        var hotSkus = CacheHelper.<int[]>getTemporary(hotCache).orElse(null);
+        if (hotSkus == null) {
+            val collected = new ArrayList<Integer>();
+            val sinceTimestamp = new Timestamp(taskTimestamp.getTime() - TimeUnit.DAYS.toMillis(1));
+            DbHelper.executeQuery(result -> {
+                try {
+                    collected.add(result.getInt("sku"));
+                } catch (Exception ex) {
+                    handleEx("Fatal exception while processing hot skus query result", ex);
+                }
+            }, "SELECT products.sku AS sku, SUM(changes.volume) AS volume FROM (" +
+                    "SELECT size_id, ABS(quantity) AS volume FROM orders WHERE timestamp >= ? UNION ALL " +
+                    "SELECT size_id, ABS(quantity) AS volume FROM refills WHERE timestamp >= ?) AS changes " +
+                    "JOIN sizes ON sizes.id = changes.size_id " +
+                    "JOIN products ON products.id = sizes.product_id " +
+                    "WHERE products.last_timestamp >= ? " +
+                    "GROUP BY products.sku ORDER BY volume DESC LIMIT ?;",
+                    sinceTimestamp, sinceTimestamp, dayTimestamp, CrawlerApi.Settings.getIterationHotLimit()).join();
+            hotSkus = collected.stream().mapToInt(Integer::intValue).toArray();
+            CacheHelper.writeTemporary(hotCache, hotSkus);
+            log.info("Selected {} hot skus with recent orders or refills", hotSkus.length);
+        }
+        val hotSet = new LongLongMap(hotSkus.length);
+        for (val sku : hotSkus) {
+            hotSet.put(sku, 1);
+        }
+        val sliceCount = bounds.length - 1;
+        val watermarks = new long[sliceCount];
+        val hotDone = new AtomicBoolean();
+        val checkpoint = CacheHelper.<StockCheckpoint>getTemporary(checkpointCache).orElse(null);
+        if (checkpoint != null) {
+            hotDone.set(checkpoint.isHotDone());
+            System.arraycopy(checkpoint.getWatermarks(), 0, watermarks, 0, sliceCount);
+            truncateOutput(checkpoint.getOffsets());
+        } else {
+            for (var i = 0; i < sliceCount; i++) {
+                watermarks[i] = bounds[i] - 1;
+            }
+            storeOutput(Map.of(), () -> saveStockCheckpoint(checkpointCache, hotDone.get(), watermarks)).join();
+        }
+        val revisits = CrawlerApi.Settings.isRevisitEnabled() ? loadRevisitTable(dayTimestamp) : null;
+        val point = DateHelper.pointIndex(taskTimestamp.getTime());
+        val deadlineMs = DateHelper.nextPointCalendar(taskTimestamp.getTime()).getTimeInMillis() - CrawlerApi.Settings.getIterationDeadlineMarginMs();
+        val deadline = new IterationDeadline(deadlineMs, CacheHelper.<Long>getTemporary(totalCache).orElse(0L));
+        log.info("Stock pass deadline is {}", new Timestamp(deadlineMs));
+        if (!hotDone.get()) {
+            val futures = new ArrayList<CompletableFuture<Void>>();
+            val skus = new HashSet<Integer>();
+            for (var i = 0; i < hotSkus.length; i++) {
+                skus.add(hotSkus[i]);
+                if (skus.size() >= CrawlerApi.Settings.getStocksBatchSize() || i == hotSkus.length - 1) {
+                    val batchSkus = skus.stream().mapToInt(Integer::intValue).toArray();
+                    futures.add(CrawlHelper.crawlStocksBySku(PrioritizedTask.Level.HIGH, skus)
+                            .thenComposeAsync(crawled -> {
+                                return storeOutput(OutputHelper.crawledStocksToOutput(crawled, taskTimestamp), () -> {
+                                    deadline.recordProcessed(batchSkus.length);
+                                    markVisited(revisits, batchSkus, point);
+                                });
+                            }));
+                    skus.clear();
+                }
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            storeOutput(Map.of(), () -> {
+                hotDone.set(true);
+                saveStockCheckpoint(checkpointCache, true, watermarks);
+            }).join();
+            log.info("Finished {} hot skus, continuing with the rest", hotSkus.length);
+        } else {
+            log.info("Hot skus already done");
+        }
+        val lastSaveMs = new AtomicLong(System.currentTimeMillis());
+        val inFlightLimit = Math.max(CrawlerApi.Settings.getStocksBatchSize(), CrawlerApi.Settings.getDatabaseQueryBatchSize() / sliceCount);
+        val finished = new AtomicInteger();
+        val sliceFutures = new ArrayList<CompletableFuture<Void>>();
+        for (var i = 0; i < sliceCount; i++) {
+            val slice = i;
+            val sliceEnd = bounds[slice + 1];
+            if (watermarks[slice] >= sliceEnd - 1) {
+                finished.incrementAndGet();
+                continue;
+            }
+            val skus = new HashSet<Integer>();
+            val scanned = new AtomicInteger();
+            val lastId = new AtomicLong(watermarks[slice]);
+            val futures = new ArrayList<CompletableFuture<Void>>();
+            val storeChain = new AtomicReference<CompletableFuture<Void>>(CompletableFuture.completedFuture(null));
+            val scheduleBatch = (Runnable) () -> {
+                val batchEnd = lastId.get();
+                val batchSkus = skus.stream().mapToInt(Integer::intValue).toArray();
+                val crawlFuture = CrawlHelper.crawlStocksBySku(deadline.isAtRisk() ? PrioritizedTask.Level.LOW : PrioritizedTask.Level.MEDIUM, skus);
+                val storeFuture = storeChain.get().thenCombine(crawlFuture, (ignored, crawled) -> crawled)
+                        .thenComposeAsync(crawled -> {
+                            return storeOutput(OutputHelper.crawledStocksToOutput(crawled, taskTimestamp), () -> {
+                                watermarks[slice] = batchEnd;
+                                deadline.recordProcessed(batchSkus.length);
+                                markVisited(revisits, batchSkus, point);
+                                if (System.currentTimeMillis() - lastSaveMs.get() >= Constants.STOCK_CHECKPOINT_INTERVAL_MS) {
+                                    saveStockCheckpoint(checkpointCache, true, watermarks);
+                                    lastSaveMs.set(System.currentTimeMillis());
+                                }
+                            });
+                        });
+                storeChain.set(storeFuture);
+                futures.add(storeFuture);
+                skus.clear();
+            };
+            sliceFutures.add(DbHelper.executeQuery(Constants.SKU_SCAN_FETCH_SIZE, result -> {
+                try {
+                    val sku = result.getInt("sku");
+                    lastId.set(result.getLong("id"));
+                    scanned.incrementAndGet();
+                    if (hotSet.containsKey(sku)) {
+                        return;
+                    }
+                    if (revisits != null && !revisits.isDue(sku, point)) {
+                        deadline.recordDeferred();
+                        return;
+                    }
+                    if (deadline.isExceeded()) {
+                        deadline.recordTruncated();
+                        return;
+                    }
+                    skus.add(sku);
+                    if (skus.size() >= CrawlerApi.Settings.getStocksBatchSize()) {
+                        scheduleBatch.run();
+                    }
+                    if (futures.size() * CrawlerApi.Settings.getStocksBatchSize() >= inFlightLimit) {
+                        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+                        futures.clear();
+                    }
+                } catch (Exception ex) {
+                    handleEx("Fatal exception while processing sku slice query result", ex);
+                }
+            }, "SELECT id, sku FROM products WHERE id > ? AND id < ? AND last_timestamp >= ? ORDER BY id ASC;", watermarks[slice], sliceEnd, dayTimestamp)
+                    .thenComposeAsync(ignored -> {
+                        if (!skus.isEmpty()) {
+                            scheduleBatch.run();
+                        }
+                        return storeChain.get();
+                    })
+                    .thenComposeAsync(ignored -> storeOutput(Map.of(), () -> {
+                        watermarks[slice] = sliceEnd - 1;
+                        saveStockCheckpoint(checkpointCache, true, watermarks);
+                    }))
+                    .thenAcceptAsync(ignored -> {
+                        log.info("Finished sku slice {} ({} skus), {}/{} slices done, estimated finish at {}",
+                                slice, scanned.get(), finished.incrementAndGet(), sliceCount, new Timestamp(deadline.estimateFinishMs()));
+                    }));
+        }
+        if (sliceFutures.isEmpty()) {
+            log.info("All sku slices already done");
+            return;
+        }
+        log.info("Scanning {} remaining sku slices of {}", sliceFutures.size(), sliceCount);
+        CompletableFuture.allOf(sliceFutures.toArray(new CompletableFuture[0])).join();
+        if (revisits != null) {
+            revisits.write(Paths.get(Constants.REVISIT_FILE_NAME));
+            log.info("Deferred {} skus until their revisit interval elapses", deadline.getDeferredSkus());
+        }
+        if (deadline.getTruncatedSkus() > 0) {
+            log.warn("Deadline reached, skipped {} low priority skus after crawling {}", deadline.getTruncatedSkus(), deadline.getProcessedSkus());
+        }
+    }
+
+    private static RevisitTable loadRevisitTable(Timestamp dayTimestamp) throws IOException {
+        val path = Paths.get(Constants.REVISIT_FILE_NAME);
+        val previous = Files.exists(path) ? RevisitTable.read(path) : RevisitTable.empty();
+        if (CacheHelper.hasTemporary("revisit_table_built")) {
+            return previous;
+        }
+        val maxPoints = Integer.highestOneBit(CrawlerApi.Settings.getRevisitMaxHours() / 3);
+        val historyPoints = (int) (TimeUnit.DAYS.toMillis(1) / DateHelper.pointsToMs(1));
+        val sinceTimestamp = new Timestamp(dayTimestamp.getTime() - TimeUnit.DAYS.toMillis(1));
+        val changedVisits = new HashMap<Integer, Integer>();
+        DbHelper.executeQuery(CrawlerApi.Settings.getDatabaseQueryBatchSize(), result -> {
+            try {
+                changedVisits.put(result.getInt("sku"), result.getInt("changed"));
+            } catch (Exception ex) {
+                handleEx("Fatal exception while processing volatility query result", ex);
+            }
+        }, "SELECT products.sku AS sku, COUNT(DISTINCT changes.timestamp_to) AS changed FROM (" +
+                "SELECT size_id, timestamp_to FROM orders WHERE timestamp >= ? UNION ALL " +
+                "SELECT size_id, timestamp_to FROM refills WHERE timestamp >= ?) AS changes " +
+                "JOIN sizes ON sizes.id = changes.size_id " +
+                "JOIN products ON products.id = sizes.product_id " +
+                "GROUP BY products.sku;", sinceTimestamp, sinceTimestamp).join();
+        val skus = IntStream.builder();
+        val states = IntStream.builder();
+        val intervalCounts = new int[maxPoints + 1];
+        DbHelper.executeQuery(CrawlerApi.Settings.getDatabaseQueryBatchSize(), result -> {
+            try {
+                val sku = result.getInt("sku");
+                val interval = previous.getIntervalPoints(sku, 1);
+                val possible = Math.max(1, historyPoints / interval);
+                val changed = changedVisits.getOrDefault(sku, 0);
+                var nextInterval = interval;
+                if (changed * 2 >= possible) {
+                    nextInterval = Math.max(1, interval / 2);
+                } else if (changed == 0) {
+                    nextInterval = Math.min(maxPoints, interval * 2);
+                }
+                nextInterval = Math.min(maxPoints, nextInterval);
+                skus.add(sku);
+                states.add(RevisitTable.packState(previous.getLastVisitPoint(sku), nextInterval));
+                intervalCounts[nextInterval]++;
+            } catch (Exception ex) {
+                handleEx("Fatal exception while processing revisit products query result", ex);
+            }
+        }, "SELECT sku FROM products WHERE last_timestamp >= ? ORDER BY sku ASC;", dayTimestamp).join();
+        val revisits = new RevisitTable(skus.build().toArray(), states.build().toArray());
+        revisits.write(path);
+        CacheHelper.writeTemporary("revisit_table_built");
+        val sj = new StringJoiner(", ");
+        for (var points = 1; points <= maxPoints; points <<= 1) {
+            sj.add(intervalCounts[points] + " every " + points * 3 + "h");
+        }
+        log.info("Rebuilt revisit table for {} skus ({})", revisits.size(), sj);
+        return revisits;
+    }
+
+    private static void markVisited(RevisitTable revisits, int[] skus, int point) {
+        if (revisits == null) {
+            return;
+        }
+        for (val sku : skus) {
+            revisits.markVisited(sku, point);
+        }
+    }
+
+    private static void saveStockCheckpoint(String checkpointCache, boolean hotDone, long[] watermarks) {
+        val offsets = new HashMap<String, Long>();
+        for (val table : List.of(Table.SIZES, Table.WAREHOUSES, Table.STOCKS)) {
+            try {
+                val path = table.getOutputPath();
+                offsets.put(path.toString(), Files.exists(path) ? Files.size(path) : 0L);
+            } catch (IOException ex) {
+                handleEx("Fatal exception while saving stock checkpoint", ex);
+            }
+        }
+        CacheHelper.writeTemporary(checkpointCache, new StockCheckpoint(hotDone, watermarks.clone(), offsets));
+    }
+
+    private static void truncateOutput(Map<String, Long> offsets) throws IOException {
+        for (val entry : offsets.entrySet()) {
+            val path = Paths.get(entry.getKey());
+            if (!Files.exists(path) || Files.size(path) <= entry.getValue()) {
+                continue;
+            }
+            val cached = OutputTask.channelCache.remove(path);
+            if (cached != null) {
+                cached.close();
+            }
+            @Cleanup val channel = FileChannel.open(path, StandardOpenOption.WRITE);
+            log.info("Truncating {} from {} to committed offset {}", path, channel.size(), entry.getValue());
+            channel.truncate(entry.getValue());
+        }
     }
 
     private static void prepareProcessOrdersRefills(Timestamp taskTimestamp, Timestamp dayTimestamp, Timestamp lastTimestamp) {
-        processOrdersRefills(lastTimestamp, taskTimestamp);
-        val importOrders = importIntoDatabase(Table.ORDERS, taskTimestamp, lastTimestamp);
-        val importRefills = importIntoDatabase(Table.REFILLS, taskTimestamp, lastTimestamp);
-        importOrders.join();
-        importRefills.join();
+        val timestampsFrom = processOrdersRefills(lastTimestamp, taskTimestamp);
+        val uniform = timestampsFrom.isEmpty() || (timestampsFrom.size() == 1 && timestampsFrom.contains(lastTimestamp));
+        if (!uniform) {
+            val futures = new ArrayList<CompletableFuture<Void>>();
+            for (val timestampFrom : timestampsFrom) {
+                futures.add(ensurePartition(Table.ORDERS, taskTimestamp, timestampFrom));
+                futures.add(ensurePartition(Table.REFILLS, taskTimestamp, timestampFrom));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            log.info("Orders and refills span {} previous observation points, using staged import", timestampsFrom.size());
+        }
+        importTables(taskTimestamp, lastTimestamp, uniform, Table.ORDERS, Table.REFILLS);
     }
 
-    private static void processOrdersRefills(Timestamp taskTimestamp, Timestamp timestampTo) {
+    private static Set<Timestamp> processOrdersRefills(Timestamp lastTimestamp, Timestamp timestampTo) {
+        val lookbackTimestamp = CrawlerApi.Settings.isRevisitEnabled() ?
+                new Timestamp(Math.min(lastTimestamp.getTime(), timestampTo.getTime() - TimeUnit.HOURS.toMillis(CrawlerApi.Settings.getRevisitMaxHours()))) :
+                lastTimestamp;
         val sql = "SELECT products.sku AS product_sku, " +
                 "sizes.name AS size_name, " +
                 "sizes.alt_name AS size_alt_name, " +
                 "warehouses.wb_id AS warehouse_wb_id, " +
                 "warehouses.name AS warehouse_name, " +
+                "s1.timestamp AS timestamp_from, " +
                 "s2.quantity - s1.quantity AS diff " +
-                "FROM stocks s1 " +
-                "LEFT JOIN sizes ON sizes.id = s1.size_id " +
-                "LEFT JOIN warehouses ON warehouses.id = s1.warehouse_id " +
+                "FROM stocks s2 " +
+                "JOIN LATERAL (SELECT s.timestamp, s.quantity FROM stocks s " +
+                "WHERE s.size_id = s2.size_id AND s.warehouse_id = s2.warehouse_id AND s.timestamp < ? AND s.timestamp >= ? " +
+                "ORDER BY s.timestamp DESC LIMIT 1) s1 ON TRUE " +
+                "LEFT JOIN sizes ON sizes.id = s2.size_id " +
+                "LEFT JOIN warehouses ON warehouses.id = s2.warehouse_id " +
                 "LEFT JOIN products ON products.id = sizes.product_id " +
-                "LEFT JOIN stocks s2 ON s2.size_id = s1.size_id AND s2.warehouse_id = s1.warehouse_id AND s2.timestamp = ? " +
-                "WHERE s1.timestamp = ?;";
-        val orders = new HashSet<Order>();
-        val refills = new HashSet<Refill>();
+                "WHERE s2.timestamp = ?;";
+        val orders = new HashMap<Timestamp, HashSet<Order>>();
+        val refills = new HashMap<Timestamp, HashSet<Refill>>();
+        val timestampsFrom = new HashSet<Timestamp>();
         val count = new AtomicInteger();
-        DbHelper.executeQuery(Constants.QUERY_BATCH_SIZE, result -> {
+        val batchSize = CrawlerApi.Settings.getDatabaseQueryBatchSize();
+        DbHelper.executeQuery(batchSize, result -> {
             try {
                 val productSku = result.getInt("product_sku");
                 val sizeName = result.getString("size_name");
                 val sizeAltName = result.getString("size_alt_name");
                 val warehouseWbId = result.getInt("warehouse_wb_id");
                 val warehouseName = result.getString("warehouse_name");
+                val timestampFrom = result.getTimestamp("timestamp_from");
                 val diff = result.getInt("diff");
                 val productKey = new ProductKey(productSku);
                 val sizeKey = new SizeKey(productKey, sizeName);
@@ -961,87 +1478,345 @@ public class CrawlerImpl {
                 val order = diff < 0;
                 val refill = diff > 0;
                 if (order) {
-                    orders.add(new Order(merchKey, Math.abs(diff)));
+                    orders.computeIfAbsent(timestampFrom, ignored -> new HashSet<>()).add(new Order(merchKey, Math.abs(diff)));
+                    timestampsFrom.add(timestampFrom);
                 } else if (refill) {
-                    refills.add(new Refill(merchKey, diff));
+                    refills.computeIfAbsent(timestampFrom, ignored -> new HashSet<>()).add(new Refill(merchKey, diff));
+                    timestampsFrom.add(timestampFrom);
                 }
-                if (count.incrementAndGet() == Constants.QUERY_BATCH_SIZE) {
+                if (count.incrementAndGet() == batchSize) {
                     log.info("Storing batch because it reached the limit");
-                    storeOutput(OutputHelper.ordersRefillsToOutput(orders, refills, taskTimestamp, timestampTo)).join();
-                    orders.clear();
-                    refills.clear();
+                    storeOrdersRefills(orders, refills, timestampTo);
                     count.set(0);
                 }
             } catch (Exception ex) {
                 handleEx("Fatal exception while processing stocks/refills query result", ex);
             }
-        }, sql, timestampTo, taskTimestamp).join();
+        }, sql, timestampTo, lookbackTimestamp, timestampTo).join();
         if (!orders.isEmpty() || !refills.isEmpty()) {
             log.info("Storing leftovers from last batch");
-            storeOutput(OutputHelper.ordersRefillsToOutput(orders, refills, taskTimestamp, timestampTo)).join();
+            storeOrdersRefills(orders, refills, timestampTo);
+        }
+        return timestampsFrom;
+    }
+
+    private static void storeOrdersRefills(Map<Timestamp, HashSet<Order>> orders, Map<Timestamp, HashSet<Refill>> refills, Timestamp timestampTo) {
+        val timestampsFrom = new HashSet<Timestamp>(orders.keySet());
+        timestampsFrom.addAll(refills.keySet());
+        for (val timestampFrom : timestampsFrom) {
+            storeOutput(OutputHelper.ordersRefillsToOutput(
+                    orders.getOrDefault(timestampFrom, new HashSet<>()),
+                    refills.getOrDefault(timestampFrom, new HashSet<>()),
+                    timestampFrom, timestampTo)).join();
         }
+        orders.clear();
+        refills.clear();
     }
 
-    private static CompletableFuture<Void> importIntoDatabase(Table table, Timestamp taskTimestamp, Timestamp timestampFrom) {
+    private static void importTables(Timestamp taskTimestamp, Timestamp timestampFrom, boolean uniqueOutput, Table... tables) {
+        val scheduled = List.of(tables);
+        val futures = new LinkedHashMap<Table, CompletableFuture<Void>>();
+        val timings = new ConcurrentHashMap<Table, ImportTiming>();
+        for (val table : tables) {
+            scheduleImport(table, scheduled, futures, timings, taskTimestamp, timestampFrom, uniqueOutput);
+        }
+        CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).join();
+        logImportTimings(scheduled, timings);
+    }
+
+    private static CompletableFuture<Void> scheduleImport(Table table, List<Table> scheduled, Map<Table, CompletableFuture<Void>> futures, Map<Table, ImportTiming> timings, Timestamp taskTimestamp, Timestamp timestampFrom, boolean uniqueOutput) {
+        val existing = futures.get(table);
+        if (existing != null) {
+            return existing;
+        }
+        val dependencyFutures = new ArrayList<CompletableFuture<Void>>();
+        for (val dependency : table.dependencies) {
+            if (scheduled.contains(dependency)) {
+                dependencyFutures.add(scheduleImport(dependency, scheduled, futures, timings, taskTimestamp, timestampFrom, uniqueOutput));
+            }
+        }
+        val future = CompletableFuture.allOf(dependencyFutures.toArray(new CompletableFuture[0]))
+                .thenComposeAsync(ignored -> {
+                    val startMs = System.currentTimeMillis();
+                    return importIntoDatabase(table, taskTimestamp, timestampFrom, uniqueOutput)
+                            .thenAcceptAsync(ignored2 -> {
+                                timings.put(table, new ImportTiming(startMs, System.currentTimeMillis()));
+                            });
+                });
+        futures.put(table, future);
+        return future;
+    }
+
+    private static void logImportTimings(List<Table> scheduled, Map<Table, ImportTiming> timings) {
+        var firstStartMs = Long.MAX_VALUE;
+        Table last = null;
+        for (val table : scheduled) {
+            val timing = timings.get(table);
+            firstStartMs = Math.min(firstStartMs, timing.getStartMs());
+            if (last == null || timing.getEndMs() > timings.get(last).getEndMs()) {
+                last = table;
+            }
+        }
+        for (val table : scheduled) {
+            val timing = timings.get(table);
+            log.info("Import of {} took {} ms (started at +{} ms)",
+                    table.tableName,
+                    timing.getEndMs() - timing.getStartMs(),
+                    timing.getStartMs() - firstStartMs);
+        }
+        val path = new ArrayList<String>();
+        val totalMs = timings.get(last).getEndMs() - firstStartMs;
+        var current = last;
+        while (current != null) {
+            path.add(0, current.tableName);
+            Table next = null;
+            for (val dependency : current.dependencies) {
+                if (timings.containsKey(dependency) && (next == null || timings.get(dependency).getEndMs() > timings.get(next).getEndMs())) {
+                    next = dependency;
+                }
+            }
+            current = next;
+        }
+        log.info("Import critical path: {} ({} ms)", String.join(" -> ", path), totalMs);
+    }
+
+    private static CompletableFuture<Void> importIntoDatabase(Table table, Timestamp taskTimestamp, Timestamp timestampFrom, boolean uniqueOutput) {
         val cache = taskTimestamp.toString() +
                 "_imp_table_" +
                 table.tableName;
         if (CacheHelper.hasTemporary(cache)) {
             return CompletableFuture.completedFuture(null);
         }
+        return CompletableFuture.supplyAsync(() -> {
+                    if (table.resolvedImportSql == null) {
+                        return false;
+                    }
+                    log.info("Started resolving ids of {}", table.tableName);
+                    val resolved = IdHelper.resolveOutput(table, createResolvedPath(table));
+                    log.info("Finished resolving ids of {} ({})", table.tableName, resolved ? "resolved" : "unresolved");
+                    return resolved;
+                }, CrawlerApi.getOrchestrationExecutor())
+                .thenComposeAsync(resolved -> {
+                    if (resolved && uniqueOutput) {
+                        return loadIntoPartition(table, taskTimestamp, timestampFrom)
+                                .exceptionallyComposeAsync(ex -> {
+                                    log.warn("Unable to load {} directly into partition, falling back to staged import", table.tableName, ex);
+                                    return stagedImport(table, taskTimestamp, timestampFrom, true);
+                                });
+                    }
+                    return stagedImport(table, taskTimestamp, timestampFrom, resolved);
+                })
+                .thenAcceptAsync(ignored -> {
+                    CacheHelper.writeTemporary(cache);
+                });
+    }
+
+    private static CompletableFuture<Void> stagedImport(Table table, Timestamp taskTimestamp, Timestamp timestampFrom, boolean resolved) {
+        val tmpSchema = resolved ? table.resolvedTmpSchema : table.tmpSchema;
+        val inputPath = resolved ? createResolvedPath(table) : table.outputPath;
+        val importSql = resolved ? table.resolvedImportSql : table.importSql;
         return DbHelper.executeUpdate("DROP TABLE IF EXISTS " + table.tableName + "_tmp;")
                 .thenComposeAsync(ignored -> {
-                    return DbHelper.executeUpdate("CREATE TABLE " + table.tableName + "_tmp (" + table.tmpSchema + ");");
+                    return DbHelper.executeUpdate("CREATE TABLE " + table.tableName + "_tmp (" + tmpSchema + ");");
                 })
                 .thenComposeAsync(ignored -> {
                     log.info("Started copying {}", table.tableName);
-                    return DbHelper.executeUpdate("COPY " + table.tableName + "_tmp FROM '" + table.outputPath.toAbsolutePath() + "';");
+                    return DbHelper.executeUpdate("COPY " + table.tableName + "_tmp FROM '" + inputPath.toAbsolutePath() + "';");
                 })
                 .thenComposeAsync(ignored -> {
                     log.info("Finished copying {}", table.tableName);
                     if (table.type == TableType.HISTORY) {
-                        val lowTs = new Timestamp(DateHelper.dayStartCalendar(timestampFrom != null ? timestampFrom.getTime() : taskTimestamp.getTime(), 0).getTimeInMillis());
-                        val highTs = new Timestamp(DateHelper.dayStartCalendar(timestampFrom != null ? timestampFrom.getTime() : taskTimestamp.getTime(), 1).getTimeInMillis());
-                        val partName = "_" + lowTs.toString().split(" ")[0].replace("-", "");
-                        return DbHelper.executeUpdate("INSERT INTO partitions (timestamp, table_name) VALUES (?, ?) ON CONFLICT (table_name) DO NOTHING;", lowTs, table.tableName + partName)
-                                .thenComposeAsync(ignored2 -> {
-                                    return DbHelper.executeUpdate("CREATE TABLE IF NOT EXISTS " + table.tableName + partName + " PARTITION OF " + table.tableName + " FOR VALUES FROM ('" + lowTs + "') TO ('" + highTs + "');");
-                                });
+                        return ensurePartition(table, taskTimestamp, timestampFrom);
                     }
                     return CompletableFuture.completedFuture(null);
                 })
                 .thenComposeAsync(ignored -> {
                     log.info("Started importing {}", table.tableName);
-                    return DbHelper.executeUpdate(table.importSql.replace("%table%", table.tableName));
+                    val sql = importSql.replace("%table%", table.tableName);
+                    if (IdHelper.tracks(table)) {
+                        return DbHelper.executeQuery(CrawlerApi.Settings.getDatabaseQueryBatchSize(), result -> {
+                            IdHelper.record(table, result);
+                        }, sql);
+                    }
+                    return DbHelper.executeUpdate(sql);
                 })
                 .thenComposeAsync(ignored -> {
                     log.info("Finished importing {}", table.tableName);
                     return DbHelper.executeUpdate("DROP TABLE " + table.tableName + "_tmp;");
+                });
+    }
+
+    private static CompletableFuture<Void> loadIntoPartition(Table table, Timestamp taskTimestamp, Timestamp timestampFrom) {
+        val rowTs = timestampFrom != null ? timestampFrom : taskTimestamp;
+        val lowTs = createPartitionLowTimestamp(taskTimestamp, timestampFrom);
+        val highTs = createPartitionHighTimestamp(taskTimestamp, timestampFrom);
+        val partName = createPartitionName(table, lowTs);
+        val copySql = "COPY " + partName + " (" + extractColumns(table.resolvedTmpSchema) + ") FROM '" + createResolvedPath(table).toAbsolutePath() + "'";
+        val partExists = new AtomicReference<Boolean>();
+        return DbHelper.executeQuery(result -> {
+                    try {
+                        partExists.set(result.getString("regclass") != null);
+                    } catch (Exception ex) {
+                        handleEx("Fatal exception while processing partition lookup query result", ex);
+                    }
+                }, "SELECT to_regclass(?)::TEXT AS regclass;", partName)
+                .thenComposeAsync(ignored -> {
+                    return registerPartition(partName, lowTs);
+                })
+                .thenComposeAsync(ignored -> {
+                    if (partExists.get()) {
+                        log.info("Started loading {} into existing partition {}", table.tableName, partName);
+                        return DbHelper.executeTransaction(
+                                "DELETE FROM " + partName + " WHERE timestamp = '" + rowTs + "';",
+                                copySql + ";");
+                    }
+                    log.info("Started loading {} into new partition {}", table.tableName, partName);
+                    return DbHelper.executeTransaction(
+                            "CREATE TABLE " + partName + " (LIKE " + table.tableName + " INCLUDING DEFAULTS);",
+                            copySql + " WITH (FREEZE);",
+                            "ALTER TABLE " + partName + " ADD CONSTRAINT " + partName + "_bounds CHECK (timestamp IS NOT NULL AND timestamp >= '" + lowTs + "' AND timestamp < '" + highTs + "');",
+                            "ALTER TABLE " + table.tableName + " ATTACH PARTITION " + partName + " FOR VALUES FROM ('" + lowTs + "') TO ('" + highTs + "');",
+                            "ALTER TABLE " + partName + " DROP CONSTRAINT " + partName + "_bounds;");
                 })
                 .thenAcceptAsync(ignored -> {
-                    CacheHelper.writeTemporary(cache);
+                    log.info("Finished loading {} into partition {}", table.tableName, partName);
+                });
+    }
+
+    private static CompletableFuture<Void> ensurePartition(Table table, Timestamp taskTimestamp, Timestamp timestampFrom) {
+        val lowTs = createPartitionLowTimestamp(taskTimestamp, timestampFrom);
+        val highTs = createPartitionHighTimestamp(taskTimestamp, timestampFrom);
+        val partName = createPartitionName(table, lowTs);
+        return registerPartition(partName, lowTs)
+                .thenComposeAsync(ignored -> {
+                    return DbHelper.executeUpdate("CREATE TABLE IF NOT EXISTS " + partName + " PARTITION OF " + table.tableName + " FOR VALUES FROM ('" + lowTs + "') TO ('" + highTs + "');");
                 });
     }
 
-    private static CompletableFuture<CollectedCategory> collectCategory(Category category) {
+    private static CompletableFuture<Void> registerPartition(String partName, Timestamp lowTs) {
+        return DbHelper.executeUpdate("INSERT INTO partitions (timestamp, table_name) VALUES (?, ?) ON CONFLICT (table_name) DO NOTHING;", lowTs, partName);
+    }
+
+    private static Timestamp createPartitionLowTimestamp(Timestamp taskTimestamp, Timestamp timestampFrom) {
+        return new Timestamp(DateHelper.dayStartCalendar(timestampFrom != null ? timestampFrom.getTime() : taskTimestamp.getTime(), 0).getTimeInMillis());
+    }
+
+    private static Timestamp createPartitionHighTimestamp(Timestamp taskTimestamp, Timestamp timestampFrom) {
+        return new Timestamp(DateHelper.dayStartCalendar(timestampFrom != null ? timestampFrom.getTime() : taskTimestamp.getTime(), 1).getTimeInMillis());
+    }
+
+    private static String createPartitionName(Table table, Timestamp lowTs) {
+        return table.tableName + "_" + lowTs.toString().split(" ")[0].replace("-", "");
+    }
+
+    private static String extractColumns(String schema) {
+        val sj = new StringJoiner(", ");
+        for (val column : schema.split(", ")) {
+            sj.add(column.split(" ")[0]);
+        }
+        return sj.toString();
+    }
+
+    private static Path createResolvedPath(Table table) {
+        return Paths.get(Constants.OUTPUT_DIR_NAME, table.tableName + "_resolved.txt");
+    }
+
+    private static CompletableFuture<CollectedCategory> collectCategory(Category category, Timestamp taskTimestamp) {
+        val cache = "discovery_category_" + category.getKey().getText();
+        val discovered = CrawlerApi.Settings.isDiscoveryIncremental() ?
+                CacheHelper.<DiscoveredCategory>getPermanent(cache).orElse(null) :
+                null;
+        val nowMs = taskTimestamp.getTime();
+        if (discovered != null && !needsRevalidation(category, discovered.getCategory(), nowMs) &&
+                discovered.getQueries().stream().noneMatch(node -> needsRevalidation(category, node, nowMs))) {
+            return CompletableFuture.completedFuture(restoreCategory(category, discovered));
+        }
         return CrawlHelper.crawlQueries(category).exceptionallyAsync(ex -> handleEx("Unable to collect category because queries crawl failed", ex))
                 .thenComposeAsync(queriesRes -> {
+                    val storedQueries = new HashMap<String, DiscoveredSource>();
+                    if (discovered != null) {
+                        for (val stored : discovered.getQueries()) {
+                            storedQueries.put(stored.getText(), stored);
+                        }
+                    }
                     val sources = new HashSet<Source>(queriesRes.getQueries());
                     sources.add(category);
-                    var catalogFuture = CompletableFuture.completedFuture(new HashSet<Catalog>());
+                    var nodeFuture = CompletableFuture.completedFuture(new HashMap<Source, DiscoveredSource>());
                     for (val source : sources) {
-                        catalogFuture = catalogFuture.thenCombineAsync(CrawlHelper.crawlCatalog(source).exceptionallyAsync(ex -> handleEx("Unable to collect category because catalog crawl failed", ex)), (oldSet, catalogRes) -> {
-                            val newSet = new HashSet<>(oldSet);
-                            newSet.add(catalogRes.getCatalog());
-                            return newSet;
+                        val stored = source == category ?
+                                (discovered != null ? discovered.getCategory() : null) :
+                                storedQueries.get(source.getKey().getText());
+                        CompletableFuture<DiscoveredSource> sourceFuture;
+                        if (stored != null && !needsRevalidation(category, stored, nowMs)) {
+                            source.getRelatedCatalogKey().set(new CatalogKey(stored.getCatalogShard(), stored.getCatalogQuery()));
+                            discoveryReused.incrementAndGet();
+                            sourceFuture = CompletableFuture.completedFuture(stored);
+                        } else {
+                            discoveryCrawled.incrementAndGet();
+                            sourceFuture = CrawlHelper.crawlCatalog(source).exceptionallyAsync(ex -> handleEx("Unable to collect category because catalog crawl failed", ex))
+                                    .thenApplyAsync(catalogRes -> {
+                                        val catalogKey = catalogRes.getCatalog().getKey();
+                                        return new DiscoveredSource(source.getKey().getText(), catalogKey.getShard(), catalogKey.getQuery(), nowMs);
+                                    });
+                        }
+                        nodeFuture = nodeFuture.thenCombineAsync(sourceFuture, (oldMap, node) -> {
+                            val newMap = new HashMap<>(oldMap);
+                            newMap.put(source, node);
+                            return newMap;
                         });
                     }
-                    return catalogFuture.thenApplyAsync(catalogs -> {
+                    return nodeFuture.thenApplyAsync(nodes -> {
+                        val catalogs = new HashSet<Catalog>();
+                        val queries = new ArrayList<DiscoveredSource>();
+                        for (val entry : nodes.entrySet()) {
+                            val node = entry.getValue();
+                            catalogs.add(new Catalog(new CatalogKey(node.getCatalogShard(), node.getCatalogQuery())));
+                            if (entry.getKey() != category) {
+                                queries.add(node);
+                            }
+                        }
+                        CacheHelper.writePermanent(cache, new DiscoveredCategory(nodes.get(category), queries));
                         return new CollectedCategory(catalogs, sources);
                     });
                 });
     }
 
+    private static CollectedCategory restoreCategory(Category category, DiscoveredCategory discovered) {
+        val catalogs = new HashSet<Catalog>();
+        val sources = new HashSet<Source>();
+        val categoryNode = discovered.getCategory();
+        val categoryCatalogKey = new CatalogKey(categoryNode.getCatalogShard(), categoryNode.getCatalogQuery());
+        category.getRelatedCatalogKey().set(categoryCatalogKey);
+        catalogs.add(new Catalog(categoryCatalogKey));
+        sources.add(category);
+        for (val node : discovered.getQueries()) {
+            val catalogKey = new CatalogKey(node.getCatalogShard(), node.getCatalogQuery());
+            val query = new Query(new SourceKey(node.getText()));
+            query.getRelatedCatalogKey().set(catalogKey);
+            catalogs.add(new Catalog(catalogKey));
+            sources.add(query);
+        }
+        discoveryReused.addAndGet(sources.size());
+        return new CollectedCategory(catalogs, sources);
+    }
+
+    private static boolean needsRevalidation(Category category, DiscoveredSource node, long nowMs) {
+        val ageMs = nowMs - node.getLastSeenMs();
+        if (ageMs <= 0) {
+            return false;
+        }
+        if (ageMs >= TimeUnit.DAYS.toMillis(CrawlerApi.Settings.getDiscoveryMaxAgeDays())) {
+            return true;
+        }
+        val fraction = CrawlerApi.Settings.getDiscoveryRevalidateFraction();
+        if (fraction <= 0) {
+            return false;
+        }
+        val cohorts = (int) Math.min(Integer.MAX_VALUE, Math.max(1, Math.round(1 / fraction)));
+        val dayIndex = nowMs / TimeUnit.DAYS.toMillis(1);
+        return Math.floorMod(category.getKey().getText().hashCode(), cohorts) == Math.floorMod(dayIndex, cohorts);
+    }
+
     private static CompletableFuture<CollectedCatalogPage> collectCatalogPage(Catalog catalog, int page) {
         return CrawlHelper.crawlCatalogPage(catalog, page).exceptionallyAsync(ex -> handleEx("Unable to collect catalog page because page crawl failed", ex))
                 .thenComposeAsync(pageRes -> {
@@ -1068,12 +1843,108 @@ public class CrawlerImpl {
     }
 
     private static CompletableFuture<Void> storeOutput(Map<Path, ByteBuffer> transformed) {
+        return storeOutput(transformed, null);
+    }
+
+    private static CompletableFuture<Void> storeOutput(Map<Path, ByteBuffer> transformed, Runnable afterWrite) {
         val callback = new CompletableFuture<Void>();
-        val task = new OutputTask(transformed, callback);
+        val task = new OutputTask(transformed, callback, afterWrite);
         outputExecutor.execute(task);
         return callback;
     }
 
+    private static String formatDedupStats() {
+        val total = WebHelper.getTotalRequests();
+        val shared = WebHelper.getSharedRequests();
+        val hits = CrawlHelper.getResultCacheHits();
+        val lookups = hits + CrawlHelper.getResultCacheMisses();
+        val sellerRequests = CrawlHelper.getSellerRequests();
+        val fingerprinted = CrawlHelper.getFingerprintedRequests();
+        val unchanged = CrawlHelper.getUnchangedPayloads();
+        return String.format("in-flight shared %d / %d (%.2f%%), result cache hits %d / %d (%.2f%%), " +
+                        "seller fingerprint hits %d / %d (%.2f%%), unchanged payloads %d (%.2f%% of fingerprinted)",
+                shared, total, total > 0 ? shared * 100.0 / total : 0.0,
+                hits, lookups, lookups > 0 ? hits * 100.0 / lookups : 0.0,
+                fingerprinted, sellerRequests, sellerRequests > 0 ? fingerprinted * 100.0 / sellerRequests : 0.0,
+                unchanged, fingerprinted > 0 ? unchanged * 100.0 / fingerprinted : 0.0);
+    }
+
+    private static String formatBasketStats() {
+        val routes = CrawlerApi.getBasketRoutes();
+        return String.format("baskets %d, learned bounds %d, requests %s, misses %s",
+                routes.getBasketCount(), routes.getLearnedBounds(), routes.getRequestCounts(), routes.getMissCounts());
+    }
+
+    private static String formatConnectionStats() {
+        val sj = new StringJoiner(", ");
+        for (val entry : new TreeMap<>(WebHelper.getConnectionStats()).entrySet()) {
+            val stats = entry.getValue();
+            val requests = stats.getRequests();
+            val connections = stats.getConnections();
+            val handshakes = stats.getHandshakes();
+            sj.add(String.format("%s: %s, requests %d, connections %d (%.1f req/conn), reused %d (%.2f%%), handshakes %d (avg %.1f ms), h2 responses %d",
+                    entry.getKey(), stats.isHttp1Fallback() ? "http/1.1 fallback" : CrawlerApi.Settings.isWebHttp2Enabled() ? "h2" : "http/1.1",
+                    requests, connections, connections > 0 ? (double) requests / connections : 0.0,
+                    stats.getReusedConnections(), requests > 0 ? stats.getReusedConnections() * 100.0 / requests : 0.0,
+                    handshakes, handshakes > 0 ? stats.getHandshakeNanos() / 1e6 / handshakes : 0.0,
+                    stats.getHttp2Responses()));
+        }
+        return sj.toString();
+    }
+
+    private static String formatTransferStats() {
+        val sj = new StringJoiner(", ");
+        for (val entry : new TreeMap<>(WebHelper.getTransferStats()).entrySet()) {
+            val stats = entry.getValue();
+            val wireBytes = stats.getWireBytes();
+            val decodedBytes = stats.getDecodedBytes();
+            sj.add(String.format("%s: responses %d (compressed %d), wire %d KB, decoded %d KB (saved %.2f%%), decode %d ms",
+                    entry.getKey(), stats.getResponses(), stats.getCompressedResponses(),
+                    wireBytes / 1024, decodedBytes / 1024, decodedBytes > 0 ? (decodedBytes - wireBytes) * 100.0 / decodedBytes : 0.0,
+                    stats.getDecodeNanos() / 1000000));
+        }
+        return sj.toString();
+    }
+
+    private static String formatEgressStats() {
+        val sj = new StringJoiner(", ");
+        val nowMs = System.currentTimeMillis();
+        for (val egress : WebHelper.getEgresses()) {
+            sj.add(String.format("%s: %s, requests %d, failures %d, throttled %d, ejections %d",
+                    egress.getId(), egress.isAvailable(nowMs) ? "healthy" : "ejected for " + (egress.getEjectedUntilMs() - nowMs) + " ms",
+                    egress.getRequests(), egress.getFailures(), egress.getThrottles(), egress.getEjections()));
+        }
+        return sj.toString();
+    }
+
+    private static String formatHedgeStats() {
+        val sj = new StringJoiner(", ");
+        sj.add(String.format("hedged %d / %d", WebHelper.getHedgedRequests(), WebHelper.getHedgeableRequests()));
+        for (val entry : new TreeMap<>(WebHelper.getHedgeStats()).entrySet()) {
+            val stats = entry.getValue();
+            sj.add(String.format("%s: hedges %d (won %d), attempt p95/p99 %d/%d ms, observed p95/p99 %d/%d ms",
+                    entry.getKey(), stats.getHedges(), stats.getHedgeWins(),
+                    stats.getAttemptLatency().quantile(0.95), stats.getAttemptLatency().quantile(0.99),
+                    stats.getObservedLatency().quantile(0.95), stats.getObservedLatency().quantile(0.99)));
+        }
+        return sj.toString();
+    }
+
+    private static String formatExecutorStats() {
+        val threads = ManagementFactory.getThreadMXBean();
+        val uptimeMs = ManagementFactory.getRuntimeMXBean().getUptime();
+        val statements = DbHelper.getExecutedStatements();
+        val borrowed = DbHelper.getBorrowedConnections();
+        return String.format("mode %s, platform threads %d (peak %d), db statements %d (%.2f/s), db busy %d ms, " +
+                        "statement time %d ms, pool wait %d ms (avg %.2f ms, max %d ms), connections active %d awaiting %d",
+                CrawlerApi.isVirtualThreadsEnabled() ? CrawlerApi.ExecutorMode.VIRTUAL : CrawlerApi.ExecutorMode.PLATFORM,
+                threads.getThreadCount(), threads.getPeakThreadCount(),
+                statements, uptimeMs > 0 ? statements * 1000.0 / uptimeMs : 0.0,
+                DbHelper.getBusyMs(), DbHelper.getStatementMs(),
+                DbHelper.getPoolWaitMs(), borrowed > 0 ? (double) DbHelper.getPoolWaitMs() / borrowed : 0.0, DbHelper.getMaxPoolWaitMs(),
+                DbHelper.getActiveConnections(), DbHelper.getAwaitingConnections());
+    }
+
     private static String formatUsedMemoryInMb() {
         return (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / 1048576 + " MB";
     }
@@ -0,0 +1,14 @@
+package ru.statsklad13.wb.crawler.impl.data.merch;
+
+import lombok.Value;
+
+@Value
+public class ArchivedMerch {
+
+    long timestampMs;
+    long timestampToMs;
+    long sizeId;
+    long warehouseId;
+    int quantity;
+
+}
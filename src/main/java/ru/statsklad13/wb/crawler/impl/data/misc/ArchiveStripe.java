@@ -0,0 +1,164 @@
+package ru.statsklad13.wb.crawler.impl.data.misc;
+
+import lombok.val;
+import ru.statsklad13.wb.crawler.impl.data.merch.ArchivedMerch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+public class ArchiveStripe {
+
+    private final boolean withTimestampTo;
+    private final long[] timestamps;
+    private final long[] timestampsTo;
+    private final long[] sizeIds;
+    private final long[] warehouseIds;
+    private final int[] quantities;
+    private int size;
+
+    public ArchiveStripe(boolean withTimestampTo, int capacity) {
+        this.withTimestampTo = withTimestampTo;
+        this.timestamps = new long[capacity];
+        this.timestampsTo = withTimestampTo ? new long[capacity] : null;
+        this.sizeIds = new long[capacity];
+        this.warehouseIds = new long[capacity];
+        this.quantities = new int[capacity];
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isFull() {
+        return this.size == this.timestamps.length;
+    }
+
+    public void clear() {
+        this.size = 0;
+    }
+
+    public void add(long timestampMs, long timestampToMs, long sizeId, long warehouseId, int quantity) {
+        this.timestamps[this.size] = timestampMs;
+        if (this.withTimestampTo) {
+            this.timestampsTo[this.size] = timestampToMs;
+        }
+        this.sizeIds[this.size] = sizeId;
+        this.warehouseIds[this.size] = warehouseId;
+        this.quantities[this.size] = quantity;
+        this.size++;
+    }
+
+    public ArchivedMerch get(int index) {
+        return new ArchivedMerch(this.timestamps[index],
+                this.withTimestampTo ? this.timestampsTo[index] : 0,
+                this.sizeIds[index],
+                this.warehouseIds[index],
+                this.quantities[index]);
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        val encoded = new ByteArrayOutputStream();
+        writeColumn(encoded, this.timestamps);
+        if (this.withTimestampTo) {
+            writeColumn(encoded, this.timestampsTo);
+        }
+        writeColumn(encoded, this.sizeIds);
+        writeColumn(encoded, this.warehouseIds);
+        for (var i = 0; i < this.size; i++) {
+            val sameSeries = i > 0 && this.sizeIds[i] == this.sizeIds[i - 1] && this.warehouseIds[i] == this.warehouseIds[i - 1];
+            writeVarLong(encoded, zigZag(sameSeries ? (long) this.quantities[i] - this.quantities[i - 1] : this.quantities[i]));
+        }
+        var minTs = Long.MAX_VALUE;
+        var maxTs = Long.MIN_VALUE;
+        for (var i = 0; i < this.size; i++) {
+            minTs = Math.min(minTs, this.timestamps[i]);
+            maxTs = Math.max(maxTs, this.timestamps[i]);
+        }
+        out.writeInt(this.size);
+        out.writeLong(minTs);
+        out.writeLong(maxTs);
+        out.writeInt(encoded.size());
+        encoded.writeTo(out);
+    }
+
+    public static ArchiveStripe decode(byte[] encoded, int rowCount, boolean withTimestampTo) throws IOException {
+        val stripe = new ArchiveStripe(withTimestampTo, rowCount);
+        val in = new DataInputStream(new ByteArrayInputStream(encoded));
+        readColumn(in, stripe.timestamps, rowCount);
+        if (withTimestampTo) {
+            readColumn(in, stripe.timestampsTo, rowCount);
+        }
+        readColumn(in, stripe.sizeIds, rowCount);
+        readColumn(in, stripe.warehouseIds, rowCount);
+        for (var i = 0; i < rowCount; i++) {
+            val sameSeries = i > 0 && stripe.sizeIds[i] == stripe.sizeIds[i - 1] && stripe.warehouseIds[i] == stripe.warehouseIds[i - 1];
+            val value = unZigZag(readVarLong(in));
+            stripe.quantities[i] = (int) (sameSeries ? stripe.quantities[i - 1] + value : value);
+        }
+        stripe.size = rowCount;
+        return stripe;
+    }
+
+    private void writeColumn(OutputStream out, long[] column) throws IOException {
+        val dictionary = Arrays.stream(column, 0, this.size).distinct().sorted().toArray();
+        writeVarLong(out, dictionary.length);
+        var prev = 0L;
+        for (val value : dictionary) {
+            writeVarLong(out, zigZag(value - prev));
+            prev = value;
+        }
+        for (var i = 0; i < this.size; i++) {
+            writeVarLong(out, Arrays.binarySearch(dictionary, column[i]));
+        }
+    }
+
+    private static void readColumn(InputStream in, long[] column, int rowCount) throws IOException {
+        val dictionary = new long[(int) readVarLong(in)];
+        var prev = 0L;
+        for (var i = 0; i < dictionary.length; i++) {
+            prev += unZigZag(readVarLong(in));
+            dictionary[i] = prev;
+        }
+        for (var i = 0; i < rowCount; i++) {
+            column[i] = dictionary[(int) readVarLong(in)];
+        }
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        var value = 0L;
+        for (var shift = 0; shift < 64; shift += 7) {
+            val b = in.read();
+            if (b < 0) {
+                throw new IOException("Unexpected end of archive stripe");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in archive stripe");
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+}
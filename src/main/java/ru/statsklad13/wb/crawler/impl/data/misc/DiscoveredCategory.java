@@ -0,0 +1,16 @@
+package ru.statsklad13.wb.crawler.impl.data.misc;
+
+import lombok.Value;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+@Value
+public class DiscoveredCategory implements Serializable {
+
+    private static final long serialVersionUID = -8282563547877519436L;
+
+    DiscoveredSource category;
+    ArrayList<DiscoveredSource> queries;
+
+}
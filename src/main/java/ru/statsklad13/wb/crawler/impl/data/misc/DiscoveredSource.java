@@ -0,0 +1,17 @@
+package ru.statsklad13.wb.crawler.impl.data.misc;
+
+import lombok.Value;
+
+import java.io.Serializable;
+
+@Value
+public class DiscoveredSource implements Serializable {
+
+    private static final long serialVersionUID = 4021914085525412789L;
+
+    String text;
+    String catalogShard;
+    String catalogQuery;
+    long lastSeenMs;
+
+}
@@ -0,0 +1,11 @@
+package ru.statsklad13.wb.crawler.impl.data.misc;
+
+import lombok.Value;
+
+@Value
+public class ImportTiming {
+
+    long startMs;
+    long endMs;
+
+}
@@ -0,0 +1,65 @@
+package ru.statsklad13.wb.crawler.impl.data.misc;
+
+import lombok.Getter;
+import lombok.val;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class IterationDeadline {
+
+    @Getter private final long deadlineMs;
+    private final long startMs;
+    private final long totalSkus;
+    private final AtomicLong processedSkus = new AtomicLong();
+    private final AtomicLong truncatedSkus = new AtomicLong();
+    private final AtomicLong deferredSkus = new AtomicLong();
+
+    public IterationDeadline(long deadlineMs, long totalSkus) {
+        this.deadlineMs = deadlineMs;
+        this.startMs = System.currentTimeMillis();
+        this.totalSkus = totalSkus;
+    }
+
+    public void recordProcessed(int skus) {
+        this.processedSkus.addAndGet(skus);
+    }
+
+    public void recordTruncated() {
+        this.truncatedSkus.incrementAndGet();
+    }
+
+    public void recordDeferred() {
+        this.deferredSkus.incrementAndGet();
+    }
+
+    public long getProcessedSkus() {
+        return this.processedSkus.get();
+    }
+
+    public long getTruncatedSkus() {
+        return this.truncatedSkus.get();
+    }
+
+    public long getDeferredSkus() {
+        return this.deferredSkus.get();
+    }
+
+    public boolean isExceeded() {
+        return System.currentTimeMillis() >= this.deadlineMs;
+    }
+
+    public boolean isAtRisk() {
+        return estimateFinishMs() > this.deadlineMs;
+    }
+
+    public long estimateFinishMs() {
+        val now = System.currentTimeMillis();
+        val processed = this.processedSkus.get();
+        if (processed == 0) {
+            return now;
+        }
+        val remaining = Math.max(0, this.totalSkus - processed - this.truncatedSkus.get() - this.deferredSkus.get());
+        return now + (now - this.startMs) * remaining / processed;
+    }
+
+}
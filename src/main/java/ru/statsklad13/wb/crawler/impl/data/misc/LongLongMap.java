@@ -0,0 +1,120 @@
+package ru.statsklad13.wb.crawler.impl.data.misc;
+
+import lombok.val;
+
+import java.util.Arrays;
+
+public class LongLongMap {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private long[] values;
+    private int size;
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    public LongLongMap(int expectedSize) {
+        val capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        this.keys = new long[capacity];
+        this.values = new long[capacity];
+    }
+
+    public synchronized long get(long key, long missingValue) {
+        if (key == 0) {
+            return this.hasZeroKey ? this.zeroValue : missingValue;
+        }
+        val mask = this.keys.length - 1;
+        for (var slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            val current = this.keys[slot];
+            if (current == key) {
+                return this.values[slot];
+            }
+            if (current == 0) {
+                return missingValue;
+            }
+        }
+    }
+
+    public synchronized boolean containsKey(long key) {
+        if (key == 0) {
+            return this.hasZeroKey;
+        }
+        val mask = this.keys.length - 1;
+        for (var slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            val current = this.keys[slot];
+            if (current == key) {
+                return true;
+            }
+            if (current == 0) {
+                return false;
+            }
+        }
+    }
+
+    public synchronized boolean put(long key, long value) {
+        if (key == 0) {
+            val added = !this.hasZeroKey;
+            this.hasZeroKey = true;
+            this.zeroValue = value;
+            if (added) {
+                this.size++;
+            }
+            return added;
+        }
+        if (this.size + 1 > this.keys.length * LOAD_FACTOR) {
+            rehash(this.keys.length << 1);
+        }
+        val mask = this.keys.length - 1;
+        for (var slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            val current = this.keys[slot];
+            if (current == key) {
+                this.values[slot] = value;
+                return false;
+            }
+            if (current == 0) {
+                this.keys[slot] = key;
+                this.values[slot] = value;
+                this.size++;
+                return true;
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return this.size;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(this.keys, 0);
+        this.size = 0;
+        this.hasZeroKey = false;
+    }
+
+    private void rehash(int capacity) {
+        val oldKeys = this.keys;
+        val oldValues = this.values;
+        this.keys = new long[capacity];
+        this.values = new long[capacity];
+        val mask = capacity - 1;
+        for (var i = 0; i < oldKeys.length; i++) {
+            val key = oldKeys[i];
+            if (key != 0) {
+                var slot = mix(key) & mask;
+                while (this.keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                this.keys[slot] = key;
+                this.values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+}
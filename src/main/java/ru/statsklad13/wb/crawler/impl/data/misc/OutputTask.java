@@ -19,6 +19,7 @@ public class OutputTask implements Runnable {
 
     Map<Path, ByteBuffer> transformed;
     CompletableFuture<Void> callback;
+    Runnable afterWrite;
 
     @Override
     public void run() {
@@ -33,6 +34,9 @@ public class OutputTask implements Runnable {
                 }
                 cached.write(buf);
             }
+            if (this.afterWrite != null) {
+                this.afterWrite.run();
+            }
             this.callback.complete(null);
         } catch (Exception ex) {
             CrawlerImpl.handleEx("Fatal exception in output thread", ex);
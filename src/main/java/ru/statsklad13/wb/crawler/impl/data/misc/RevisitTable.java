@@ -0,0 +1,92 @@
+package ru.statsklad13.wb.crawler.impl.data.misc;
+
+import lombok.Cleanup;
+import lombok.val;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+public class RevisitTable {
+
+    private static final int INTERVAL_BITS = 4;
+    private static final int INTERVAL_MASK = (1 << INTERVAL_BITS) - 1;
+
+    private final int[] skus;
+    private final int[] states;
+
+    public RevisitTable(int[] skus, int[] states) {
+        this.skus = skus;
+        this.states = states;
+    }
+
+    public static RevisitTable empty() {
+        return new RevisitTable(new int[0], new int[0]);
+    }
+
+    public static RevisitTable read(Path path) throws IOException {
+        @Cleanup val in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+        val size = in.readInt();
+        val skus = new int[size];
+        val states = new int[size];
+        for (var i = 0; i < size; i++) {
+            skus[i] = in.readInt();
+            states[i] = in.readInt();
+        }
+        return new RevisitTable(skus, states);
+    }
+
+    public static int packState(int lastVisitPoint, int intervalPoints) {
+        return lastVisitPoint << INTERVAL_BITS | Integer.numberOfTrailingZeros(intervalPoints);
+    }
+
+    public int size() {
+        return this.skus.length;
+    }
+
+    public int getIntervalPoints(int sku, int missingPoints) {
+        val index = Arrays.binarySearch(this.skus, sku);
+        return index < 0 ? missingPoints : 1 << (this.states[index] & INTERVAL_MASK);
+    }
+
+    public int getLastVisitPoint(int sku) {
+        val index = Arrays.binarySearch(this.skus, sku);
+        return index < 0 ? 0 : this.states[index] >>> INTERVAL_BITS;
+    }
+
+    public boolean isDue(int sku, int point) {
+        val index = Arrays.binarySearch(this.skus, sku);
+        if (index < 0) {
+            return true;
+        }
+        val state = this.states[index];
+        val lastVisitPoint = state >>> INTERVAL_BITS;
+        return lastVisitPoint == 0 || point - lastVisitPoint >= 1 << (state & INTERVAL_MASK);
+    }
+
+    public void markVisited(int sku, int point) {
+        val index = Arrays.binarySearch(this.skus, sku);
+        if (index >= 0) {
+            this.states[index] = point << INTERVAL_BITS | (this.states[index] & INTERVAL_MASK);
+        }
+    }
+
+    public void write(Path path) throws IOException {
+        val tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (val out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath), 1 << 16))) {
+            out.writeInt(this.skus.length);
+            for (var i = 0; i < this.skus.length; i++) {
+                out.writeInt(this.skus[i]);
+                out.writeInt(this.states[i]);
+            }
+        }
+        Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+}
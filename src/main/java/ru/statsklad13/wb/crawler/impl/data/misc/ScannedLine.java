@@ -0,0 +1,146 @@
+package ru.statsklad13.wb.crawler.impl.data.misc;
+
+import lombok.val;
+import ru.statsklad13.wb.crawler.impl.CrawlerImpl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class ScannedLine {
+
+    private static final byte FIELD_SEPARATOR = (byte) CrawlerImpl.Constants.FIELD_SEPARATOR.charAt(0);
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ByteBuffer buffer;
+    private long offset;
+    private int start;
+    private int end;
+    private int fieldCount;
+    private int[] fieldStarts = new int[16];
+    private int[] fieldEnds = new int[16];
+
+    public void reset(ByteBuffer buffer, long offset, int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        this.start = start;
+        this.end = end;
+        this.fieldCount = 0;
+        var fieldStart = start;
+        for (var pos = start; pos <= end; pos++) {
+            if (pos == end || buffer.get(pos) == FIELD_SEPARATOR) {
+                if (this.fieldCount == this.fieldStarts.length) {
+                    this.fieldStarts = Arrays.copyOf(this.fieldStarts, this.fieldCount * 2);
+                    this.fieldEnds = Arrays.copyOf(this.fieldEnds, this.fieldCount * 2);
+                }
+                this.fieldStarts[this.fieldCount] = fieldStart;
+                this.fieldEnds[this.fieldCount] = pos;
+                this.fieldCount++;
+                fieldStart = pos + 1;
+            }
+        }
+    }
+
+    public long getOffset() {
+        return this.offset;
+    }
+
+    public int getLength() {
+        return this.end - this.start;
+    }
+
+    public int getFieldCount() {
+        return this.fieldCount;
+    }
+
+    public boolean isNullField(int index) {
+        checkIndex(index);
+        val from = this.fieldStarts[index];
+        return this.fieldEnds[index] - from == 2 && this.buffer.get(from) == '\\' && this.buffer.get(from + 1) == 'N';
+    }
+
+    public String getField(int index) {
+        checkIndex(index);
+        val from = this.fieldStarts[index];
+        val bytes = new byte[this.fieldEnds[index] - from];
+        this.buffer.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public int getIntField(int index) {
+        checkIndex(index);
+        var pos = this.fieldStarts[index];
+        val to = this.fieldEnds[index];
+        val negative = pos < to && this.buffer.get(pos) == '-';
+        if (negative) {
+            pos++;
+        }
+        if (pos == to) {
+            throw new NumberFormatException("Empty int field " + index + " at offset " + this.offset);
+        }
+        var value = 0;
+        for (; pos < to; pos++) {
+            val digit = this.buffer.get(pos) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid int field " + index + " at offset " + this.offset);
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    public long hashFields(int fromIndex, int toIndex) {
+        checkIndex(fromIndex);
+        checkIndex(toIndex);
+        var hash = FNV_OFFSET_BASIS;
+        for (var pos = this.fieldStarts[fromIndex]; pos < this.fieldEnds[toIndex]; pos++) {
+            hash ^= this.buffer.get(pos) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    public byte[] getFieldBytes(int fromIndex, int toIndex) {
+        checkIndex(fromIndex);
+        checkIndex(toIndex);
+        val from = this.fieldStarts[fromIndex];
+        val bytes = new byte[Math.max(0, this.fieldEnds[toIndex] - from)];
+        this.buffer.get(from, bytes);
+        return bytes;
+    }
+
+    public boolean fieldsEqual(int fromIndex, int toIndex, byte[] bytes) {
+        checkIndex(fromIndex);
+        checkIndex(toIndex);
+        val from = this.fieldStarts[fromIndex];
+        if (Math.max(0, this.fieldEnds[toIndex] - from) != bytes.length) {
+            return false;
+        }
+        for (var i = 0; i < bytes.length; i++) {
+            if (this.buffer.get(from + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long hashLine() {
+        return hashFields(0, this.fieldCount - 1);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= this.fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + index + " out of " + this.fieldCount + " at offset " + this.offset);
+        }
+    }
+
+}
@@ -0,0 +1,17 @@
+package ru.statsklad13.wb.crawler.impl.data.misc;
+
+import lombok.Value;
+
+import java.io.Serializable;
+import java.util.HashMap;
+
+@Value
+public class StockCheckpoint implements Serializable {
+
+    private static final long serialVersionUID = -8693581802167275798L;
+
+    boolean hotDone;
+    long[] watermarks;
+    HashMap<String, Long> offsets;
+
+}
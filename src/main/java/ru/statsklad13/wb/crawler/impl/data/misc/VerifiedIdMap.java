@@ -0,0 +1,71 @@
+package ru.statsklad13.wb.crawler.impl.data.misc;
+
+import lombok.val;
+
+import java.util.Arrays;
+
+public class VerifiedIdMap {
+
+    private static final long NO_SLOT = -1;
+    private static final long COLLIDED = -2;
+
+    private final LongLongMap slots;
+    private String[] keys;
+    private long[] ids;
+    private int size;
+    private int collisions;
+
+    public VerifiedIdMap(int expectedSize) {
+        this.slots = new LongLongMap(expectedSize);
+        this.keys = new String[Math.max(16, expectedSize)];
+        this.ids = new long[this.keys.length];
+    }
+
+    public synchronized void put(long hash, String key, long id) {
+        val slot = this.slots.get(hash, NO_SLOT);
+        if (slot == COLLIDED) {
+            return;
+        }
+        if (slot != NO_SLOT) {
+            if (this.keys[(int) slot].equals(key)) {
+                this.ids[(int) slot] = id;
+            } else {
+                this.slots.put(hash, COLLIDED);
+                this.collisions++;
+            }
+            return;
+        }
+        if (this.size == this.keys.length) {
+            this.keys = Arrays.copyOf(this.keys, this.size * 2);
+            this.ids = Arrays.copyOf(this.ids, this.size * 2);
+        }
+        this.keys[this.size] = key;
+        this.ids[this.size] = id;
+        this.slots.put(hash, this.size);
+        this.size++;
+    }
+
+    public synchronized long get(long hash, String key, long missingValue) {
+        val slot = this.slots.get(hash, NO_SLOT);
+        if (slot < 0 || !this.keys[(int) slot].equals(key)) {
+            return missingValue;
+        }
+        return this.ids[(int) slot];
+    }
+
+    public synchronized int size() {
+        return this.size;
+    }
+
+    public synchronized int getCollisions() {
+        return this.collisions;
+    }
+
+    public synchronized void clear() {
+        this.slots.clear();
+        Arrays.fill(this.keys, 0, this.size, null);
+        this.size = 0;
+        this.collisions = 0;
+    }
+
+}
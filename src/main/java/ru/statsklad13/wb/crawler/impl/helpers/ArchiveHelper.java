@@ -0,0 +1,179 @@
+package ru.statsklad13.wb.crawler.impl.helpers;
+
+import lombok.Cleanup;
+import lombok.extern.log4j.Log4j2;
+import lombok.val;
+import ru.statsklad13.wb.crawler.api.CrawlerApi;
+import ru.statsklad13.wb.crawler.api.helpers.DbHelper;
+import ru.statsklad13.wb.crawler.impl.CrawlerImpl;
+import ru.statsklad13.wb.crawler.impl.data.merch.ArchivedMerch;
+import ru.statsklad13.wb.crawler.impl.data.misc.ArchiveStripe;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+@Log4j2
+public class ArchiveHelper {
+
+    private static final int MAGIC = 0x57424341;
+    private static final int VERSION = 1;
+    private static final int STRIPE_ROWS = 1 << 20;
+    private static final String FILE_EXTENSION = ".col";
+
+    public static boolean supports(CrawlerImpl.Table table) {
+        return switch (table) {
+            case STOCKS, ORDERS, REFILLS -> true;
+            default -> false;
+        };
+    }
+
+    public static long archivePartition(CrawlerImpl.Table table, String partName) throws IOException {
+        val withTimestampTo = hasTimestampTo(table);
+        val archiveDirPath = Paths.get(CrawlerImpl.Constants.ARCHIVE_DIR_NAME);
+        Files.createDirectories(archiveDirPath);
+        val archivePath = archiveDirPath.resolve(partName + FILE_EXTENSION);
+        val tmpPath = archiveDirPath.resolve(partName + FILE_EXTENSION + ".tmp");
+        val rows = new AtomicLong();
+        try (val out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tmpPath), 1 << 16), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeBoolean(withTimestampTo);
+            val stripe = new ArchiveStripe(withTimestampTo, STRIPE_ROWS);
+            DbHelper.executeQuery(CrawlerApi.Settings.getDatabaseQueryBatchSize(), result -> {
+                try {
+                    stripe.add(result.getTimestamp("timestamp").getTime(),
+                            withTimestampTo ? result.getTimestamp("timestamp_to").getTime() : 0,
+                            result.getLong("size_id"),
+                            result.getLong("warehouse_id"),
+                            result.getInt("quantity"));
+                    rows.incrementAndGet();
+                    if (stripe.isFull()) {
+                        stripe.writeTo(out);
+                        stripe.clear();
+                    }
+                } catch (Exception ex) {
+                    CrawlerImpl.handleEx("Fatal exception while archiving partition " + partName, ex);
+                }
+            }, "SELECT timestamp, " + (withTimestampTo ? "timestamp_to, " : "") + "size_id, warehouse_id, quantity FROM " + partName + " " +
+                    "ORDER BY size_id, warehouse_id, timestamp;").join();
+            if (stripe.size() > 0) {
+                stripe.writeTo(out);
+            }
+            out.writeInt(0);
+        }
+        Files.move(tmpPath, archivePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Archived {} rows of {} into {} ({} bytes)", rows.get(), partName, archivePath, Files.size(archivePath));
+        return rows.get();
+    }
+
+    public static long scanArchives(CrawlerImpl.Table table, Timestamp timestampFrom, Timestamp timestampTo, Consumer<ArchivedMerch> action) throws IOException {
+        val fromMs = timestampFrom.getTime();
+        val toMs = timestampTo.getTime();
+        var matched = 0L;
+        for (val archivePath : listArchives(table)) {
+            val dayStart = parseDayStart(table, archivePath);
+            val nextDayStart = new Timestamp(DateHelper.dayStartCalendar(dayStart.getTime(), 1).getTimeInMillis());
+            if (dayStart.getTime() >= toMs || nextDayStart.getTime() <= fromMs) {
+                continue;
+            }
+            matched += scanArchive(archivePath, fromMs, toMs, action);
+        }
+        return matched;
+    }
+
+    public static int deleteArchivesBefore(Timestamp edgeTimestamp) throws IOException {
+        var deleted = 0;
+        for (val table : CrawlerImpl.Table.values()) {
+            if (!supports(table)) {
+                continue;
+            }
+            for (val archivePath : listArchives(table)) {
+                if (parseDayStart(table, archivePath).before(edgeTimestamp)) {
+                    Files.delete(archivePath);
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    private static long scanArchive(Path archivePath, long fromMs, long toMs, Consumer<ArchivedMerch> action) throws IOException {
+        @Cleanup val in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(archivePath), 1 << 16), 1 << 16));
+        if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+            throw new IOException("Unsupported archive format in " + archivePath);
+        }
+        val withTimestampTo = in.readBoolean();
+        var matched = 0L;
+        int rowCount;
+        while ((rowCount = in.readInt()) > 0) {
+            val minTs = in.readLong();
+            val maxTs = in.readLong();
+            val length = in.readInt();
+            if (minTs >= toMs || maxTs < fromMs) {
+                in.skipNBytes(length);
+                continue;
+            }
+            val encoded = new byte[length];
+            in.readFully(encoded);
+            val stripe = ArchiveStripe.decode(encoded, rowCount, withTimestampTo);
+            for (var i = 0; i < rowCount; i++) {
+                val merch = stripe.get(i);
+                if (merch.getTimestampMs() >= fromMs && merch.getTimestampMs() < toMs) {
+                    action.accept(merch);
+                    matched++;
+                }
+            }
+        }
+        return matched;
+    }
+
+    private static List<Path> listArchives(CrawlerImpl.Table table) throws IOException {
+        val archives = new ArrayList<Path>();
+        val archiveDirPath = Paths.get(CrawlerImpl.Constants.ARCHIVE_DIR_NAME);
+        if (!Files.isDirectory(archiveDirPath)) {
+            return archives;
+        }
+        @Cleanup val stream = Files.newDirectoryStream(archiveDirPath, table.getTableName() + "_????????" + FILE_EXTENSION);
+        for (val archivePath : stream) {
+            archives.add(archivePath);
+        }
+        archives.sort(null);
+        return archives;
+    }
+
+    private static Timestamp parseDayStart(CrawlerImpl.Table table, Path archivePath) {
+        val fileName = archivePath.getFileName().toString();
+        val date = fileName.substring(table.getTableName().length() + 1, fileName.length() - FILE_EXTENSION.length());
+        try {
+            return Timestamp.from(LocalDate.parse(date, DateTimeFormatter.BASIC_ISO_DATE).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        } catch (Exception ex) {
+            throw new IllegalStateException("Malformed archive name " + fileName, ex);
+        }
+    }
+
+    private static boolean hasTimestampTo(CrawlerImpl.Table table) {
+        return switch (table) {
+            case STOCKS -> false;
+            case ORDERS, REFILLS -> true;
+            default -> throw new IllegalArgumentException("Partitions of " + table + " can't be archived");
+        };
+    }
+
+}
@@ -23,6 +23,10 @@ public class CacheHelper {
         }));
     }
 
+    public static <K, V> Map<K, V> openPermanentMap(String name) {
+        return cache.openMap("permanent_" + name);
+    }
+
     public static <T> Optional<T> getTemporary(String key) {
         return Optional.ofNullable((T) temporaryMap.get(key));
     }
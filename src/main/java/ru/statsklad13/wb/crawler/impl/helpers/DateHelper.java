@@ -3,9 +3,13 @@ package ru.statsklad13.wb.crawler.impl.helpers;
 import lombok.val;
 
 import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 
 public class DateHelper {
 
+    private static final long POINT_LENGTH_MS = TimeUnit.HOURS.toMillis(3);
+
     public static Calendar currentCalendar() {
         return Calendar.getInstance();
     }
@@ -50,7 +54,12 @@ public class DateHelper {
     }
 
     public static Calendar nextPointCalendar() {
-        val cal = currentCalendar();
+        return nextPointCalendar(currentCalendar().getTimeInMillis());
+    }
+
+    public static Calendar nextPointCalendar(long pointMs) {
+        val cal = Calendar.getInstance();
+        cal.setTimeInMillis(pointMs);
         val currentHour = cal.get(Calendar.HOUR_OF_DAY);
         var targetHour = 0;
         if (currentHour < 3) {
@@ -68,9 +77,17 @@ public class DateHelper {
         } else if (currentHour < 21) {
             targetHour = 21;
         }
-        val out = dayStartCalendar(targetHour == 0 ? 1 : 0);
+        val out = dayStartCalendar(pointMs, targetHour == 0 ? 1 : 0);
         out.set(Calendar.HOUR_OF_DAY, targetHour);
         return out;
     }
 
+    public static int pointIndex(long pointMs) {
+        return (int) Math.floorDiv(pointMs + TimeZone.getDefault().getOffset(pointMs), POINT_LENGTH_MS);
+    }
+
+    public static long pointsToMs(int points) {
+        return points * POINT_LENGTH_MS;
+    }
+
 }
@@ -0,0 +1,208 @@
+package ru.statsklad13.wb.crawler.impl.helpers;
+
+import lombok.Cleanup;
+import lombok.extern.log4j.Log4j2;
+import lombok.val;
+import ru.statsklad13.wb.crawler.api.CrawlerApi;
+import ru.statsklad13.wb.crawler.api.helpers.DbHelper;
+import ru.statsklad13.wb.crawler.impl.CrawlerImpl;
+import ru.statsklad13.wb.crawler.impl.data.misc.LongLongMap;
+import ru.statsklad13.wb.crawler.impl.data.misc.ScannedLine;
+import ru.statsklad13.wb.crawler.impl.data.misc.VerifiedIdMap;
+
+import java.io.BufferedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+
+@Log4j2
+public class IdHelper {
+
+    public static final long MISSING_ID = -1;
+
+    private static final VerifiedIdMap catalogIds = new VerifiedIdMap(1 << 16);
+    private static final LongLongMap productIds = new LongLongMap(1 << 20);
+    private static final VerifiedIdMap sizeIds = new VerifiedIdMap(1 << 20);
+    private static final LongLongMap warehouseIds = new LongLongMap(1 << 10);
+    private static volatile boolean warmed;
+
+    public static synchronized void warm() {
+        if (warmed) {
+            return;
+        }
+        log.info("Warming up id cache, please wait...");
+        val catalogsWarm = DbHelper.executeQuery(CrawlerApi.Settings.getDatabaseQueryBatchSize(), result -> {
+            record(CrawlerImpl.Table.CATALOGS, result);
+        }, "SELECT shard, query, id FROM catalogs;");
+        val productsWarm = DbHelper.executeQuery(CrawlerApi.Settings.getDatabaseQueryBatchSize(), result -> {
+            record(CrawlerImpl.Table.PRODUCTS, result);
+        }, "SELECT sku, id FROM products;");
+        val sizesWarm = DbHelper.executeQuery(CrawlerApi.Settings.getDatabaseQueryBatchSize(), result -> {
+            record(CrawlerImpl.Table.SIZES, result);
+        }, "SELECT product_id, name, id FROM sizes;");
+        val warehousesWarm = DbHelper.executeQuery(CrawlerApi.Settings.getDatabaseQueryBatchSize(), result -> {
+            record(CrawlerImpl.Table.WAREHOUSES, result);
+        }, "SELECT wb_id, id FROM warehouses;");
+        CompletableFuture.allOf(catalogsWarm, productsWarm, sizesWarm, warehousesWarm).join();
+        warmed = true;
+        log.info("Id cache warmed up ({} catalogs, {} products, {} sizes, {} warehouses, {} hash collisions left to joined import)",
+                catalogIds.size(), productIds.size(), sizeIds.size(), warehouseIds.size(), catalogIds.getCollisions() + sizeIds.getCollisions());
+    }
+
+    public static synchronized void invalidate() {
+        catalogIds.clear();
+        productIds.clear();
+        sizeIds.clear();
+        warehouseIds.clear();
+        warmed = false;
+        log.info("Invalidated id cache");
+    }
+
+    public static boolean tracks(CrawlerImpl.Table table) {
+        return switch (table) {
+            case CATALOGS, PRODUCTS, SIZES, WAREHOUSES -> true;
+            default -> false;
+        };
+    }
+
+    public static void record(CrawlerImpl.Table table, ResultSet result) {
+        try {
+            switch (table) {
+                case CATALOGS -> {
+                    val shard = result.getString("shard");
+                    val query = result.getString("query");
+                    catalogIds.put(hashKey(shard, query), compositeKey(shard, query), result.getLong("id"));
+                }
+                case PRODUCTS -> productIds.put(result.getInt("sku"), result.getLong("id"));
+                case SIZES -> {
+                    val productId = result.getLong("product_id");
+                    val name = result.getString("name");
+                    sizeIds.put(hashKey(productId, name), compositeKey(productId, name), result.getLong("id"));
+                }
+                case WAREHOUSES -> warehouseIds.put(result.getInt("wb_id"), result.getLong("id"));
+                default -> throw new IllegalArgumentException("Ids of " + table + " are not tracked");
+            }
+        } catch (SQLException ex) {
+            CrawlerImpl.handleEx("Fatal exception while recording ids of " + table, ex);
+        }
+    }
+
+    public static long resolveCatalog(String shard, String query) {
+        return catalogIds.get(hashKey(shard, query), compositeKey(shard, query), MISSING_ID);
+    }
+
+    public static long resolveProduct(int sku) {
+        return productIds.get(sku, MISSING_ID);
+    }
+
+    public static long resolveSize(int sku, String name) {
+        val productId = resolveProduct(sku);
+        return productId == MISSING_ID ? MISSING_ID : sizeIds.get(hashKey(productId, name), compositeKey(productId, name), MISSING_ID);
+    }
+
+    public static long resolveWarehouse(int wbId) {
+        return warehouseIds.get(wbId, MISSING_ID);
+    }
+
+    public static boolean resolveOutput(CrawlerImpl.Table table, Path resolvedPath) {
+        if (!Files.exists(table.getOutputPath())) {
+            return false;
+        }
+        warm();
+        try {
+            @Cleanup val out = new BufferedOutputStream(Files.newOutputStream(resolvedPath), 1 << 16);
+            val sb = new StringBuilder();
+            val lineSeparator = System.lineSeparator();
+            ScanHelper.scanLines(table.getOutputPath(), line -> {
+                sb.setLength(0);
+                resolveLine(table, line, sb);
+                sb.append(lineSeparator);
+                try {
+                    out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+                } catch (Exception ex) {
+                    throw new IllegalStateException("Unable to write resolved line", ex);
+                }
+            });
+            return true;
+        } catch (Exception ex) {
+            log.warn("Unable to resolve ids of {}, falling back to joined import: {}", table, ex.getMessage());
+            return false;
+        }
+    }
+
+    private static void resolveLine(CrawlerImpl.Table table, ScannedLine line, StringBuilder sb) {
+        sb.append(line.getField(0));
+        switch (table) {
+            case PRODUCT_DETAILS -> {
+                appendField(sb, requireId(resolveProduct(line.getIntField(1)), line));
+                for (var i = 2; i <= 5; i++) {
+                    appendField(sb, line.getIntField(i));
+                }
+            }
+            case POSITIONS -> {
+                appendField(sb, requireId(resolveProduct(line.getIntField(1)), line));
+                appendField(sb, requireId(resolveCatalog(unescape(line.getField(2)), unescape(line.getField(3))), line));
+                appendField(sb, line.getIntField(4));
+            }
+            case STOCKS -> appendMerch(sb, line, 1);
+            case ORDERS, REFILLS -> {
+                sb.append(CrawlerImpl.Constants.FIELD_SEPARATOR).append(line.getField(1));
+                appendMerch(sb, line, 2);
+            }
+            default -> throw new IllegalArgumentException("Ids of " + table + " can't be resolved");
+        }
+    }
+
+    private static void appendMerch(StringBuilder sb, ScannedLine line, int skuIndex) {
+        val sku = line.getIntField(skuIndex);
+        appendField(sb, requireId(resolveSize(sku, unescape(line.getField(skuIndex + 1))), line));
+        appendField(sb, requireId(resolveWarehouse(line.getIntField(skuIndex + 2)), line));
+        appendField(sb, line.getIntField(skuIndex + 3));
+    }
+
+    private static void appendField(StringBuilder sb, long value) {
+        sb.append(CrawlerImpl.Constants.FIELD_SEPARATOR).append(value);
+    }
+
+    private static long requireId(long id, ScannedLine line) {
+        if (id == MISSING_ID) {
+            throw new IllegalStateException("Unresolved id in line at offset " + line.getOffset());
+        }
+        return id;
+    }
+
+    private static String unescape(String str) {
+        return str.replace("\\\\", "\\");
+    }
+
+    private static String compositeKey(long id, String str) {
+        return id + "\t" + str;
+    }
+
+    private static String compositeKey(String str, String str2) {
+        return str + "\t" + str2;
+    }
+
+    private static long hashKey(long id, String str) {
+        var hash = 0xcbf29ce484222325L ^ id;
+        hash *= 0x100000001b3L;
+        return hashChars(hash, str);
+    }
+
+    private static long hashKey(String str, String str2) {
+        val hash = hashChars(0xcbf29ce484222325L, str);
+        return hashChars((hash ^ '\t') * 0x100000001b3L, str2);
+    }
+
+    private static long hashChars(long hash, String str) {
+        for (var i = 0; i < str.length(); i++) {
+            hash ^= str.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+}
@@ -0,0 +1,50 @@
+package ru.statsklad13.wb.crawler.impl.helpers;
+
+import lombok.Cleanup;
+import lombok.val;
+import ru.statsklad13.wb.crawler.impl.data.misc.ScannedLine;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+public class ScanHelper {
+
+    private static final long MAX_REGION_SIZE = 1L << 30;
+
+    public static void scanLines(Path path, Consumer<ScannedLine> action) throws IOException {
+        @Cleanup val channel = FileChannel.open(path, StandardOpenOption.READ);
+        val size = channel.size();
+        val line = new ScannedLine();
+        var regionStart = 0L;
+        while (regionStart < size) {
+            val regionSize = (int) Math.min(size - regionStart, MAX_REGION_SIZE);
+            val lastRegion = regionStart + regionSize == size;
+            val buf = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionSize);
+            var lineStart = 0;
+            for (var pos = 0; pos < regionSize; pos++) {
+                if (buf.get(pos) == '\n') {
+                    if (pos > lineStart) {
+                        line.reset(buf, regionStart + lineStart, lineStart, pos);
+                        action.accept(line);
+                    }
+                    lineStart = pos + 1;
+                }
+            }
+            if (lastRegion) {
+                if (lineStart < regionSize) {
+                    line.reset(buf, regionStart + lineStart, lineStart, regionSize);
+                    action.accept(line);
+                }
+                break;
+            }
+            if (lineStart == 0) {
+                throw new IOException("Line at offset " + regionStart + " exceeds max region size in " + path);
+            }
+            regionStart += lineStart;
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+package ru.statsklad13.wb.crawler.api.data.misc;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BasketRoutesTest {
+
+    @Test
+    void mapsSkusToBaskets() {
+        val routes = new BasketRoutes(new int[]{100, 200, 300});
+        assertEquals(1, routes.basketOf(0));
+        assertEquals(1, routes.basketOf(99));
+        assertEquals(2, routes.basketOf(100));
+        assertEquals(3, routes.basketOf(299));
+        assertEquals(4, routes.basketOf(300));
+        assertEquals(4, routes.basketOf(Integer.MAX_VALUE));
+        assertEquals(4, routes.getBasketCount());
+    }
+
+    @Test
+    void rejectsInvalidBounds() {
+        assertThrows(IllegalArgumentException.class, () -> new BasketRoutes(new int[]{100, 100}));
+        assertThrows(IllegalArgumentException.class, () -> new BasketRoutes(new int[]{200, 100}));
+        assertThrows(IllegalArgumentException.class, () -> new BasketRoutes(new int[BasketRoutes.MAX_BASKETS]));
+    }
+
+    @Test
+    void learnsLowerBoundaryOfNextBasket() {
+        val routes = new BasketRoutes(new int[]{100, 200, 300});
+        assertTrue(routes.learn(190, 3));
+        assertArrayEquals(new int[]{100, 190, 300}, routes.getUpperBounds());
+        assertEquals(2, routes.basketOf(189));
+        assertEquals(3, routes.basketOf(190));
+        assertEquals(1, routes.getLearnedBounds());
+    }
+
+    @Test
+    void learnsUpperBoundaryOfPreviousBasket() {
+        val routes = new BasketRoutes(new int[]{100, 200, 300});
+        assertTrue(routes.learn(205, 2));
+        assertArrayEquals(new int[]{100, 206, 300}, routes.getUpperBounds());
+        assertEquals(2, routes.basketOf(205));
+        assertEquals(3, routes.basketOf(206));
+    }
+
+    @Test
+    void learnsNewLastBasket() {
+        val routes = new BasketRoutes(new int[]{100, 200});
+        assertTrue(routes.learn(250, 4));
+        assertArrayEquals(new int[]{100, 200, 250}, routes.getUpperBounds());
+        assertEquals(4, routes.basketOf(250));
+        assertEquals(3, routes.basketOf(249));
+    }
+
+    @Test
+    void ignoresInconsistentObservations() {
+        val routes = new BasketRoutes(new int[]{100, 200, 300});
+        assertFalse(routes.learn(150, 4));
+        assertFalse(routes.learn(150, 2));
+        assertFalse(routes.learn(100, 3));
+        assertEquals(2, routes.basketOf(150));
+    }
+
+    @Test
+    void keepsBoundsAscendingWhenLearningDown() {
+        val routes = new BasketRoutes(new int[]{100, 200, 300});
+        assertFalse(routes.learn(299, 2));
+        assertArrayEquals(new int[]{100, 200, 300}, routes.getUpperBounds());
+    }
+
+    @Test
+    void detectsBoundaryProximityAndNeighbours() {
+        val routes = new BasketRoutes(new int[]{1000, 2000});
+        assertTrue(routes.isNearBoundary(1990, 2, 20));
+        assertTrue(routes.isNearBoundary(1010, 2, 20));
+        assertFalse(routes.isNearBoundary(1500, 2, 20));
+        assertTrue(routes.isNearBoundary(5000, 3, 20));
+        assertArrayEquals(new int[]{2}, routes.neighboursOf(1));
+        assertArrayEquals(new int[]{3, 1}, routes.neighboursOf(2));
+        assertArrayEquals(new int[]{4, 2}, routes.neighboursOf(3));
+    }
+
+    @Test
+    void countsRequestsAndMisses() {
+        val routes = new BasketRoutes(new int[]{100});
+        routes.recordRequest(1, true);
+        routes.recordRequest(1, false);
+        routes.recordRequest(12, true);
+        assertEquals(Map.of("01", 2L, "12", 1L), routes.getRequestCounts());
+        assertEquals(Map.of("01", 1L), routes.getMissCounts());
+    }
+
+    @Test
+    void parsesAndFormats() {
+        assertArrayEquals(new int[]{1, 20, 300}, BasketRoutes.parseBounds(" 1, 20 ,300,"));
+        assertEquals("07", BasketRoutes.formatBasket(7));
+        assertEquals("17", BasketRoutes.formatBasket(17));
+    }
+
+}
@@ -0,0 +1,87 @@
+package ru.statsklad13.wb.crawler.api.data.misc;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TypedPropertiesTest {
+
+    @Test
+    void fallsBackToDefaultsForMissingAndBlankValues() {
+        val props = create("blank", "   ");
+        assertEquals("x", props.getString("missing", "x"));
+        assertEquals("x", props.getString("blank", "x"));
+        assertEquals(7, props.getInt("blank", 7, 0, 10));
+        assertEquals(0.5, props.getDouble("missing", 0.5, 0, 1));
+        assertTrue(props.getBoolean("missing", true));
+        assertEquals(TimeUnit.SECONDS, props.getEnum("missing", TimeUnit.SECONDS));
+        assertEquals(List.of("a", "b"), props.getList("missing", "a,b"));
+    }
+
+    @Test
+    void parsesTrimmedValues() {
+        val props = create("text", " value ", "int", " 42 ", "long", "9000000000", "double", "0.25",
+                "bool", "TRUE", "enum", "minutes", "list", " a, ,b ,c,");
+        assertEquals("value", props.getString("text", null));
+        assertEquals(42, props.getInt("int", 0, 0, 100));
+        assertEquals(9000000000L, props.getLong("long", 0, 0, Long.MAX_VALUE));
+        assertEquals(0.25, props.getDouble("double", 0, 0, 1));
+        assertTrue(props.getBoolean("bool", false));
+        assertEquals(TimeUnit.MINUTES, props.getEnum("enum", TimeUnit.SECONDS));
+        assertEquals(List.of("a", "b", "c"), props.getList("list", ""));
+    }
+
+    @Test
+    void acceptsInclusiveBounds() {
+        val props = create("min", "3", "max", "24");
+        assertEquals(3, props.getInt("min", 24, 3, 24));
+        assertEquals(24, props.getInt("max", 3, 3, 24));
+    }
+
+    @Test
+    void rejectsOutOfRangeValues() {
+        val props = create("low", "2", "high", "25", "double", "1.5", "nan", "NaN");
+        assertInvalid("low", () -> props.getInt("low", 24, 3, 24));
+        assertInvalid("high", () -> props.getInt("high", 24, 3, 24));
+        assertInvalid("double", () -> props.getDouble("double", 0, 0, 1));
+        assertInvalid("nan", () -> props.getDouble("nan", 0, 0, 1));
+    }
+
+    @Test
+    void rejectsMalformedValues() {
+        val props = create("int", "12abc", "overflow", "99999999999999999999", "double", "half", "bool", "yes", "enum", "weeks");
+        assertInvalid("int", () -> props.getInt("int", 0, 0, 100));
+        assertInvalid("overflow", () -> props.getLong("overflow", 0, 0, Long.MAX_VALUE));
+        assertInvalid("double", () -> props.getDouble("double", 0, 0, 1));
+        assertInvalid("bool", () -> props.getBoolean("bool", false));
+        assertInvalid("enum", () -> props.getEnum("enum", TimeUnit.SECONDS));
+    }
+
+    @Test
+    void requiresPresentValues() {
+        val props = create("url", " jdbc:test ", "blank", "");
+        assertEquals("jdbc:test", props.getRequiredString("url"));
+        assertEquals("Missing required setting blank", assertThrows(IllegalArgumentException.class,
+                () -> props.getRequiredString("blank")).getMessage());
+        assertThrows(IllegalArgumentException.class, () -> props.getRequiredString("missing"));
+    }
+
+    private static void assertInvalid(String key, Runnable action) {
+        val ex = assertThrows(IllegalArgumentException.class, action::run);
+        assertTrue(ex.getMessage().startsWith("Invalid setting " + key + "="), ex.getMessage());
+    }
+
+    private static TypedProperties create(String... entries) {
+        val props = new Properties();
+        for (var i = 0; i < entries.length; i += 2) {
+            props.setProperty(entries[i], entries[i + 1]);
+        }
+        return new TypedProperties(props);
+    }
+
+}
@@ -0,0 +1,55 @@
+package ru.statsklad13.wb.crawler.api.data.misc;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import ru.statsklad13.wb.crawler.api.CrawlerApi;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UrlTemplateTest {
+
+    @Test
+    void rendersSlotsInTemplateOrder() {
+        val template = UrlTemplate.compile("https://h/%b%/x?a=%a%&b=%b%", "a", "b");
+        assertEquals("https://h/2/x?a=1&b=2", template.render(1, "2"));
+        assertEquals("https://h/-5/x?a=ab&b=-5", template.render("ab", -5));
+    }
+
+    @Test
+    void keepsUnknownPercentSequences() {
+        val template = UrlTemplate.compile("https://h/?q=%2C%query%%25&p=%page%", "query", "page");
+        assertEquals("https://h/?q=%2Cshoes%25&p=3", template.render("shoes", 3));
+    }
+
+    @Test
+    void rendersLiteralOnlyTemplate() {
+        val template = UrlTemplate.compile("https://h/static");
+        assertEquals("https://h/static", template.render());
+        assertTrue(template.matches("https://h/static"));
+        assertFalse(template.matches("https://h/static/more"));
+    }
+
+    @Test
+    void rejectsWrongValueCount() {
+        val template = UrlTemplate.compile("https://h/%a%/%b%", "a", "b");
+        assertThrows(IllegalArgumentException.class, () -> template.render(1));
+    }
+
+    @Test
+    void matchesRenderedUrls() {
+        val template = UrlTemplate.compile("https://basket-%basket%.wb.ru/vol%vol%/part%part%/%sku%/info/sellers.json", "basket", "vol", "part", "sku");
+        assertTrue(template.matches(template.render("01", 1, 123, 12345678)));
+        assertFalse(template.matches("https://basket-01.wb.ru/vol1/part123/12345678/images/big/1.jpg"));
+        assertFalse(template.matches("https://card.wb.ru/cards/detail?nm=1"));
+    }
+
+    @Test
+    void resolvesEndpointNamesOfApiUrls() {
+        assertEquals("seller", CrawlerApi.resolveEndpointName(CrawlerApi.createSellerUrl(12345678, 2)));
+        assertEquals("brand_image", CrawlerApi.resolveEndpointName(CrawlerApi.createBrandImageUrl(42)));
+        assertEquals("categories", CrawlerApi.resolveEndpointName(CrawlerApi.Constants.CATEGORIES_URL));
+        assertEquals("other", CrawlerApi.resolveEndpointName("https://example.com/"));
+        assertEquals("https://basket-02.wb.ru/vol123/part12345/12345678/info/sellers.json", CrawlerApi.createSellerUrl(12345678, 2));
+    }
+
+}
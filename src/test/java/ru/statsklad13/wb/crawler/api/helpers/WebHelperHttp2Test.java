@@ -0,0 +1,109 @@
+package ru.statsklad13.wb.crawler.api.helpers;
+
+import lombok.val;
+import okhttp3.internal.http2.ErrorCode;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.statsklad13.wb.crawler.api.CrawlerApi;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebHelperHttp2Test {
+
+    private static HeldCertificate certificate;
+
+    private MockWebServer server;
+
+    @BeforeAll
+    static void init(@TempDir Path dir) throws IOException, GeneralSecurityException {
+        certificate = new HeldCertificate.Builder()
+                .addSubjectAlternativeName("localhost")
+                .addSubjectAlternativeName("127.0.0.1")
+                .build();
+        val trustStore = KeyStore.getInstance("PKCS12");
+        trustStore.load(null, null);
+        trustStore.setCertificateEntry("mockwebserver", certificate.certificate());
+        val trustStorePath = dir.resolve("truststore.p12");
+        try (val stream = Files.newOutputStream(trustStorePath)) {
+            trustStore.store(stream, "changeit".toCharArray());
+        }
+        System.setProperty("javax.net.ssl.trustStore", trustStorePath.toString());
+        System.setProperty("javax.net.ssl.trustStorePassword", "changeit");
+        System.setProperty("javax.net.ssl.trustStoreType", "PKCS12");
+        val settingsPath = dir.resolve("crawler.properties");
+        Files.write(settingsPath, String.join("\n",
+                "database_url=jdbc:postgresql://localhost/test",
+                "database_username=test",
+                "database_password=test",
+                "web_http2=true",
+                "web_threads=4",
+                "web_retry_delay_ms=1",
+                "web_retry_max_delay_ms=10").getBytes(StandardCharsets.UTF_8));
+        CrawlerApi.Settings.load(settingsPath.toString());
+        WebHelper.init();
+    }
+
+    @BeforeEach
+    void startServer() throws IOException {
+        this.server = new MockWebServer();
+        this.server.useHttps(new HandshakeCertificates.Builder().heldCertificate(certificate).build().sslSocketFactory(), false);
+        this.server.start();
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        this.server.shutdown();
+    }
+
+    @Test
+    void negotiatesHttp2PerHost() throws Exception {
+        this.server.enqueue(new MockResponse().setBody("first"));
+        this.server.enqueue(new MockResponse().setBody("second"));
+        val url = "https://localhost:" + this.server.getPort() + "/h2";
+        assertEquals("first", new String(WebHelper.sendGetRequest(url, 200).get(10, TimeUnit.SECONDS).getBody(), StandardCharsets.UTF_8));
+        assertEquals("second", new String(WebHelper.sendGetRequest(url + "?page=2", 200).get(10, TimeUnit.SECONDS).getBody(), StandardCharsets.UTF_8));
+        val stats = WebHelper.getConnectionStats().get("localhost");
+        assertNotNull(stats);
+        assertEquals(2, stats.getRequests());
+        assertEquals(2, stats.getHttp2Responses());
+        assertEquals(1, stats.getConnections());
+        assertEquals(1, stats.getReusedConnections());
+        assertEquals(1, stats.getHandshakes());
+        assertFalse(stats.isHttp1Fallback());
+    }
+
+    @Test
+    void fallsBackToHttp1OnStreamFailure() throws Exception {
+        this.server.enqueue(new MockResponse()
+                .setSocketPolicy(SocketPolicy.RESET_STREAM_AT_START)
+                .setHttp2ErrorCode(ErrorCode.PROTOCOL_ERROR.getHttpCode()));
+        this.server.enqueue(new MockResponse().setBody("fallback"));
+        this.server.enqueue(new MockResponse().setBody("again"));
+        val url = "https://127.0.0.1:" + this.server.getPort() + "/h1";
+        assertEquals("fallback", new String(WebHelper.sendGetRequest(url, 200).get(10, TimeUnit.SECONDS).getBody(), StandardCharsets.UTF_8));
+        assertEquals("again", new String(WebHelper.sendGetRequest(url + "?page=2", 200).get(10, TimeUnit.SECONDS).getBody(), StandardCharsets.UTF_8));
+        val stats = WebHelper.getConnectionStats().get("127.0.0.1");
+        assertNotNull(stats);
+        assertTrue(stats.isHttp1Fallback());
+        assertEquals(2, stats.getRequests());
+        assertEquals(0, stats.getHttp2Responses());
+        assertEquals(3, this.server.getRequestCount());
+    }
+
+}
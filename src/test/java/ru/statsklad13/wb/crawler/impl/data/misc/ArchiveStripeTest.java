@@ -0,0 +1,83 @@
+package ru.statsklad13.wb.crawler.impl.data.misc;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchiveStripeTest {
+
+    @Test
+    void roundTripsWithTimestampTo() throws IOException {
+        roundTrip(true);
+    }
+
+    @Test
+    void roundTripsWithoutTimestampTo() throws IOException {
+        roundTrip(false);
+    }
+
+    @Test
+    void reportsTimestampRangeInHeader() throws IOException {
+        val stripe = new ArchiveStripe(false, 4);
+        stripe.add(300, 0, 1, 1, 5);
+        stripe.add(100, 0, 1, 1, 6);
+        stripe.add(200, 0, 2, 1, 7);
+        val in = new DataInputStream(new ByteArrayInputStream(encode(stripe)));
+        assertEquals(3, in.readInt());
+        assertEquals(100, in.readLong());
+        assertEquals(300, in.readLong());
+    }
+
+    @Test
+    void tracksCapacity() {
+        val stripe = new ArchiveStripe(false, 2);
+        stripe.add(1, 0, 1, 1, 1);
+        assertFalse(stripe.isFull());
+        stripe.add(2, 0, 1, 1, 1);
+        assertTrue(stripe.isFull());
+        stripe.clear();
+        assertEquals(0, stripe.size());
+    }
+
+    private void roundTrip(boolean withTimestampTo) throws IOException {
+        val random = new Random(42);
+        val stripe = new ArchiveStripe(withTimestampTo, 1000);
+        var sizeId = 1L;
+        var quantity = 0;
+        for (var i = 0; i < 1000; i++) {
+            if (random.nextInt(10) == 0) {
+                sizeId += 1 + random.nextInt(1000);
+            }
+            quantity = random.nextInt(5) == 0 ? Integer.MAX_VALUE - random.nextInt(3) : Math.max(0, quantity + random.nextInt(21) - 10);
+            val timestampMs = 1_700_000_000_000L + random.nextInt(24) * 3_600_000L;
+            stripe.add(timestampMs, timestampMs + 10_800_000L, sizeId, random.nextInt(3), quantity);
+        }
+        val in = new DataInputStream(new ByteArrayInputStream(encode(stripe)));
+        val rowCount = in.readInt();
+        in.readLong();
+        in.readLong();
+        val encoded = new byte[in.readInt()];
+        in.readFully(encoded);
+        assertEquals(0, in.available());
+        val decoded = ArchiveStripe.decode(encoded, rowCount, withTimestampTo);
+        assertEquals(stripe.size(), decoded.size());
+        for (var i = 0; i < rowCount; i++) {
+            assertEquals(stripe.get(i), decoded.get(i), "row " + i);
+        }
+    }
+
+    private static byte[] encode(ArchiveStripe stripe) throws IOException {
+        val bytes = new ByteArrayOutputStream();
+        stripe.writeTo(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+}
@@ -0,0 +1,59 @@
+package ru.statsklad13.wb.crawler.impl.data.misc;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IterationDeadlineTest {
+
+    @Test
+    void tracksProgressCounters() {
+        val deadline = new IterationDeadline(System.currentTimeMillis() + 60_000, 1000);
+        deadline.recordProcessed(300);
+        deadline.recordProcessed(200);
+        deadline.recordTruncated();
+        deadline.recordDeferred();
+        deadline.recordDeferred();
+        assertEquals(500, deadline.getProcessedSkus());
+        assertEquals(1, deadline.getTruncatedSkus());
+        assertEquals(2, deadline.getDeferredSkus());
+    }
+
+    @Test
+    void detectsExceededDeadline() {
+        assertTrue(new IterationDeadline(System.currentTimeMillis() - 1, 10).isExceeded());
+        assertFalse(new IterationDeadline(System.currentTimeMillis() + 60_000, 10).isExceeded());
+    }
+
+    @Test
+    void estimatesNothingBeforeFirstBatch() {
+        val deadline = new IterationDeadline(System.currentTimeMillis() + 60_000, 1000);
+        val before = System.currentTimeMillis();
+        val estimate = deadline.estimateFinishMs();
+        assertTrue(estimate >= before && estimate <= System.currentTimeMillis());
+        assertFalse(deadline.isAtRisk());
+    }
+
+    @Test
+    void extrapolatesRemainingSkus() throws InterruptedException {
+        val deadline = new IterationDeadline(System.currentTimeMillis() + 10, 1_000_000);
+        Thread.sleep(20);
+        deadline.recordProcessed(10);
+        assertTrue(deadline.estimateFinishMs() - System.currentTimeMillis() >= 10_000);
+        assertTrue(deadline.isAtRisk());
+    }
+
+    @Test
+    void excludesSkippedSkusFromEstimate() throws InterruptedException {
+        val deadline = new IterationDeadline(System.currentTimeMillis() + 60_000, 100);
+        Thread.sleep(20);
+        deadline.recordProcessed(50);
+        for (var i = 0; i < 50; i++) {
+            deadline.recordDeferred();
+        }
+        assertTrue(deadline.estimateFinishMs() <= System.currentTimeMillis());
+        assertFalse(deadline.isAtRisk());
+    }
+
+}
@@ -0,0 +1,67 @@
+package ru.statsklad13.wb.crawler.impl.data.misc;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RevisitTableTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void packsVisitPointAndInterval() {
+        val table = new RevisitTable(new int[]{10, 20}, new int[]{RevisitTable.packState(100, 4), RevisitTable.packState(0, 1)});
+        assertEquals(4, table.getIntervalPoints(10, 1));
+        assertEquals(100, table.getLastVisitPoint(10));
+        assertEquals(1, table.getIntervalPoints(20, 8));
+        assertEquals(8, table.getIntervalPoints(30, 8));
+        assertEquals(0, table.getLastVisitPoint(30));
+    }
+
+    @Test
+    void isDueOnceIntervalElapsed() {
+        val table = new RevisitTable(new int[]{10, 20}, new int[]{RevisitTable.packState(100, 4), RevisitTable.packState(0, 8)});
+        assertFalse(table.isDue(10, 101));
+        assertFalse(table.isDue(10, 103));
+        assertTrue(table.isDue(10, 104));
+        assertTrue(table.isDue(20, 1));
+        assertTrue(table.isDue(30, 1));
+    }
+
+    @Test
+    void markVisitedKeepsInterval() {
+        val table = new RevisitTable(new int[]{10}, new int[]{RevisitTable.packState(100, 2)});
+        table.markVisited(10, 102);
+        table.markVisited(99, 102);
+        assertEquals(102, table.getLastVisitPoint(10));
+        assertEquals(2, table.getIntervalPoints(10, 1));
+        assertFalse(table.isDue(10, 103));
+        assertTrue(table.isDue(10, 104));
+    }
+
+    @Test
+    void roundTripsThroughFile() throws IOException {
+        val skus = new int[1000];
+        val states = new int[1000];
+        for (var i = 0; i < skus.length; i++) {
+            skus[i] = i * 7 + 1;
+            states[i] = RevisitTable.packState(i, 1 << (i % 4));
+        }
+        val path = this.dir.resolve("revisits.bin");
+        new RevisitTable(skus, states).write(path);
+        val read = RevisitTable.read(path);
+        assertEquals(1000, read.size());
+        for (var i = 0; i < skus.length; i++) {
+            assertEquals(i, read.getLastVisitPoint(skus[i]));
+            assertEquals(1 << (i % 4), read.getIntervalPoints(skus[i], 0));
+        }
+        assertEquals(0, RevisitTable.empty().size());
+    }
+
+}
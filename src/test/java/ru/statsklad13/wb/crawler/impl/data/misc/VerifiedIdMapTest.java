@@ -0,0 +1,45 @@
+package ru.statsklad13.wb.crawler.impl.data.misc;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VerifiedIdMapTest {
+
+    @Test
+    void resolvesStoredKeys() {
+        val map = new VerifiedIdMap(2);
+        for (var i = 0; i < 100; i++) {
+            map.put(i * 31L, "key" + i, i + 1000);
+        }
+        assertEquals(100, map.size());
+        assertEquals(1042, map.get(42 * 31L, "key42", -1));
+        assertEquals(-1, map.get(42 * 31L, "key43", -1));
+        assertEquals(-1, map.get(7, "key7", -1));
+    }
+
+    @Test
+    void updatesSameKey() {
+        val map = new VerifiedIdMap(16);
+        map.put(5, "a", 1);
+        map.put(5, "a", 2);
+        assertEquals(2, map.get(5, "a", -1));
+        assertEquals(0, map.getCollisions());
+    }
+
+    @Test
+    void treatsCollidingKeysAsMissing() {
+        val map = new VerifiedIdMap(16);
+        map.put(5, "a", 1);
+        map.put(5, "b", 2);
+        map.put(5, "a", 3);
+        assertEquals(-1, map.get(5, "a", -1));
+        assertEquals(-1, map.get(5, "b", -1));
+        assertEquals(1, map.getCollisions());
+        map.clear();
+        map.put(5, "b", 2);
+        assertEquals(2, map.get(5, "b", -1));
+    }
+
+}
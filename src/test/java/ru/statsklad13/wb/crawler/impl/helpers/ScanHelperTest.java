@@ -0,0 +1,98 @@
+package ru.statsklad13.wb.crawler.impl.helpers;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScanHelperTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void splitsLinesAndFields() throws IOException {
+        val path = write("1\tfoo\t-42\n2\t\\N\t7\r\n\n3\tбар\t0");
+        val fields = new ArrayList<List<String>>();
+        val offsets = new ArrayList<Long>();
+        ScanHelper.scanLines(path, line -> {
+            val row = new ArrayList<String>();
+            for (var i = 0; i < line.getFieldCount(); i++) {
+                row.add(line.getField(i));
+            }
+            fields.add(row);
+            offsets.add(line.getOffset());
+        });
+        assertEquals(List.of(
+                List.of("1", "foo", "-42"),
+                List.of("2", "\\N", "7"),
+                List.of("3", "бар", "0")), fields);
+        assertEquals(List.of(0L, 10L, 19L), offsets);
+    }
+
+    @Test
+    void parsesTypedFields() throws IOException {
+        val path = write("-42\t\\N\t123456\tx1\n");
+        ScanHelper.scanLines(path, line -> {
+            assertEquals(-42, line.getIntField(0));
+            assertTrue(line.isNullField(1));
+            assertFalse(line.isNullField(2));
+            assertEquals(123456, line.getIntField(2));
+            assertThrows(NumberFormatException.class, () -> line.getIntField(3));
+            assertThrows(IndexOutOfBoundsException.class, () -> line.getField(4));
+        });
+    }
+
+    @Test
+    void hashesEqualLinesEqually() throws IOException {
+        val path = write("1\ta\tb\n2\ta\tb\n1\ta\tb\n");
+        val lineHashes = new ArrayList<Long>();
+        val tailHashes = new ArrayList<Long>();
+        ScanHelper.scanLines(path, line -> {
+            lineHashes.add(line.hashLine());
+            tailHashes.add(line.hashFields(1, 2));
+        });
+        assertEquals(lineHashes.get(0), lineHashes.get(2));
+        assertNotEquals(lineHashes.get(0), lineHashes.get(1));
+        assertEquals(tailHashes.get(0), tailHashes.get(1));
+    }
+
+    @Test
+    void comparesFieldBytes() throws IOException {
+        val path = write("1\tab\tc\n2\tab\tc\n3\ta\tbc\n4\tбар\t\n");
+        val stored = new ArrayList<byte[]>();
+        val matches = new ArrayList<Boolean>();
+        ScanHelper.scanLines(path, line -> {
+            if (stored.isEmpty()) {
+                stored.add(line.getFieldBytes(1, 2));
+            }
+            matches.add(line.fieldsEqual(1, 2, stored.get(0)));
+            if (line.getField(1).equals("бар")) {
+                assertArrayEquals("бар\t".getBytes(StandardCharsets.UTF_8), line.getFieldBytes(1, 2));
+            }
+        });
+        assertArrayEquals("ab\tc".getBytes(StandardCharsets.UTF_8), stored.get(0));
+        assertEquals(List.of(true, true, false, false), matches);
+    }
+
+    @Test
+    void skipsEmptyFile() throws IOException {
+        val path = write("");
+        ScanHelper.scanLines(path, line -> fail("Unexpected line at " + line.getOffset()));
+    }
+
+    private Path write(String content) throws IOException {
+        val path = this.dir.resolve("output.tsv");
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+}